@@ -0,0 +1,275 @@
+package de.uni_stuttgart.ipvs_as.agent;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.ChmodParser;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.streaming.StreamJob;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Long-running agent that executes HDFS operations and Streaming job
+ * submissions on behalf of MapReduceWSI in a warm JVM, saving the JVM startup
+ * of the hadoop/yarn CLIs for every command.
+ *
+ * The agent runs on the remote host and only listens on the loopback
+ * interface. MapReduceWSI reaches it through a SSH-forwarded port (see
+ * de.uni_stuttgart.ipvs_as.AgentClient for the protocol). Run it using
+ *
+ * <pre>
+ * HADOOP_CLASSPATH=/usr/lib/hadoop-mapreduce/hadoop-streaming.jar \
+ *   hadoop jar mapreduce_wsi_agent.jar \
+ *   de.uni_stuttgart.ipvs_as.agent.MapReduceWSIAgent &lt;port&gt; [secretFile]
+ * </pre>
+ *
+ * as the user MapReduceWSI connects as (see setup/hadoop-prepare.sh).
+ *
+ * Any local user of the remote host can connect to the loopback interface,
+ * so the first line sent on every connection must be the secret stored in
+ * |secretFile| (by default ~/.mapreduce_wsi_agent_secret, which must only be
+ * readable by the agent's user). The agent answers "OK" and then serves
+ * requests, or closes the connection if the secret does not match.
+ *
+ * Supported operations:
+ * <ul>
+ * <li><code>ping</code>
+ * <li><code>mkdir path</code>
+ * <li><code>delete path</code> (recursive)
+ * <li><code>chmod mode path</code> (recursive, mode as accepted by
+ * <code>hadoop fs -chmod</code>)
+ * <li><code>contentSummary path</code>, returns length, file count and
+ * directory count
+ * <li><code>streaming traceId args...</code>, runs a Streaming job with the
+ * given command line arguments and returns its exit code and job ID. Unless
+ * empty, |traceId| is set as MAPREDUCE_WSI_TRACE_ID in the environment of
+ * the job's ApplicationMaster and tasks.
+ * </ul>
+ *
+ * @author acgessler
+ */
+public class MapReduceWSIAgent {
+
+	private static final String ENCODING = "UTF-8";
+	private static final String DEFAULT_SECRET_FILE_NAME = ".mapreduce_wsi_agent_secret";
+
+	// Job settings holding the environment of the ApplicationMaster and the
+	// tasks, as comma-separated NAME=VALUE pairs
+	private static final String[] JOB_ENVIRONMENT_KEYS = {
+			"yarn.app.mapreduce.am.env", "mapreduce.map.env",
+			"mapreduce.reduce.env" };
+
+	private final Configuration conf = new Configuration();
+	private final FileSystem fs;
+	private final byte[] secret;
+
+	public MapReduceWSIAgent(File secretFile) throws IOException {
+		fs = FileSystem.get(conf);
+		secret = readSecret(secretFile);
+	}
+
+	private static byte[] readSecret(File secretFile) throws IOException {
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(secretFile), ENCODING));
+		try {
+			final String line = reader.readLine();
+			if (line == null || line.trim().length() == 0) {
+				throw new IOException("No secret in " + secretFile);
+			}
+			return line.trim().getBytes(ENCODING);
+		} finally {
+			reader.close();
+		}
+	}
+
+	public void serve(int port) throws IOException {
+		final ServerSocket serverSocket = new ServerSocket(port, 50,
+				InetAddress.getByName("127.0.0.1"));
+		final ExecutorService executor = Executors.newCachedThreadPool();
+		System.out.println("MapReduceWSI agent listening on port " + port);
+		while (true) {
+			final Socket socket = serverSocket.accept();
+			executor.execute(new Runnable() {
+				public void run() {
+					serveConnection(socket);
+				}
+			});
+		}
+	}
+
+	// Serve requests on |socket| until the client disconnects
+	private void serveConnection(Socket socket) {
+		try {
+			final BufferedReader reader = new BufferedReader(
+					new InputStreamReader(socket.getInputStream(), ENCODING));
+			final Writer writer = new OutputStreamWriter(
+					socket.getOutputStream(), ENCODING);
+
+			// MessageDigest.isEqual takes the same time no matter where the
+			// first mismatch is
+			String line = reader.readLine();
+			if (line == null
+					|| !MessageDigest.isEqual(secret, line.getBytes(ENCODING))) {
+				System.err.println("Rejected connection from "
+						+ socket.getRemoteSocketAddress()
+						+ ", wrong or missing secret");
+				return;
+			}
+			writer.write("OK\n");
+			writer.flush();
+
+			while ((line = reader.readLine()) != null) {
+				final String[] parts = line.split(" ", -1);
+				for (int i = 0; i < parts.length; ++i) {
+					parts[i] = URLDecoder.decode(parts[i], ENCODING);
+				}
+
+				String response;
+				try {
+					response = "OK"
+							+ encode(handle(parts[0],
+									Arrays.copyOfRange(parts, 1, parts.length)));
+				} catch (Exception e) {
+					e.printStackTrace();
+					response = "ERR" + encode(new String[] { e.toString() });
+				}
+				writer.write(response);
+				writer.write('\n');
+				writer.flush();
+			}
+		} catch (IOException e) {
+			// Client went away
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Nothing we can do about it
+			}
+		}
+	}
+
+	private String[] handle(String operation, String[] arguments)
+			throws Exception {
+		if (operation.equals("ping")) {
+			return new String[0];
+		} else if (operation.equals("mkdir")) {
+			requireArguments(arguments, 1);
+			if (!fs.mkdirs(new Path(arguments[0]))) {
+				throw new IOException("mkdirs failed for " + arguments[0]);
+			}
+			return new String[0];
+		} else if (operation.equals("delete")) {
+			requireArguments(arguments, 1);
+			return new String[] { String.valueOf(fs.delete(
+					new Path(arguments[0]), true)) };
+		} else if (operation.equals("chmod")) {
+			requireArguments(arguments, 2);
+			chmodRecursive(new ChmodParser(arguments[0]),
+					fs.getFileStatus(new Path(arguments[1])));
+			return new String[0];
+		} else if (operation.equals("contentSummary")) {
+			requireArguments(arguments, 1);
+			final ContentSummary summary = fs.getContentSummary(new Path(
+					arguments[0]));
+			return new String[] { String.valueOf(summary.getLength()),
+					String.valueOf(summary.getFileCount()),
+					String.valueOf(summary.getDirectoryCount()) };
+		} else if (operation.equals("streaming")) {
+			if (arguments.length < 1) {
+				throw new IllegalArgumentException("Expected a trace ID");
+			}
+			final String traceId = arguments[0];
+			arguments = Arrays.copyOfRange(arguments, 1, arguments.length);
+
+			// The CLI path relies on the shell to expand ~ in local paths
+			final String home = System.getProperty("user.home");
+			for (int i = 0; i < arguments.length; ++i) {
+				if (arguments[i].startsWith("~/")) {
+					arguments[i] = home + arguments[i].substring(1);
+				}
+			}
+
+			// Each job gets its own configuration, StreamJob modifies it
+			final Configuration jobConf = new Configuration(conf);
+			if (traceId.length() > 0) {
+				for (String key : JOB_ENVIRONMENT_KEYS) {
+					final String environment = jobConf.get(key, "");
+					final String separator = environment.length() > 0 ? ","
+							: "";
+					jobConf.set(key, environment + separator
+							+ "MAPREDUCE_WSI_TRACE_ID=" + traceId);
+				}
+			}
+			final JobIdCapturingStreamJob job = new JobIdCapturingStreamJob();
+			final int exitCode = ToolRunner.run(jobConf, job, arguments);
+			return new String[] { String.valueOf(exitCode), job.getJobId() };
+		}
+		throw new IllegalArgumentException("Unknown operation " + operation);
+	}
+
+	private void chmodRecursive(ChmodParser parser, FileStatus status)
+			throws IOException {
+		fs.setPermission(status.getPath(),
+				new FsPermission(parser.applyNewPermission(status)));
+		if (status.isDirectory()) {
+			for (FileStatus child : fs.listStatus(status.getPath())) {
+				chmodRecursive(parser, child);
+			}
+		}
+	}
+
+	private static void requireArguments(String[] arguments, int count) {
+		if (arguments.length != count) {
+			throw new IllegalArgumentException(String.format(
+					"Expected %s arguments, got %s", count, arguments.length));
+		}
+	}
+
+	private static String encode(String[] results)
+			throws UnsupportedEncodingException {
+		final StringBuilder sb = new StringBuilder();
+		for (String result : results) {
+			sb.append(' ');
+			sb.append(URLEncoder.encode(result == null ? "" : result,
+					ENCODING));
+		}
+		return sb.toString();
+	}
+
+	// StreamJob keeps the submitted job in a protected member only
+	private static class JobIdCapturingStreamJob extends StreamJob {
+		String getJobId() {
+			return running_ == null ? "" : running_.getID().toString();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 1 && args.length != 2) {
+			System.err.println("Expected params: port [secretFile]");
+			System.exit(-1);
+		}
+		final File secretFile = args.length > 1 ? new File(args[1]) : new File(
+				System.getProperty("user.home"), DEFAULT_SECRET_FILE_NAME);
+		(new MapReduceWSIAgent(secretFile)).serve(Integer.parseInt(args[0]));
+	}
+}
@@ -0,0 +1,105 @@
+package de.uni_stuttgart.ipvs_as.client;
+
+import java.util.concurrent.Future;
+
+import de.uni_stuttgart.ipvs_as.CompactionResult;
+import de.uni_stuttgart.ipvs_as.DryRunResult;
+import de.uni_stuttgart.ipvs_as.ImportResult;
+import de.uni_stuttgart.ipvs_as.ImportSpec;
+import de.uni_stuttgart.ipvs_as.JobInfo;
+import de.uni_stuttgart.ipvs_as.JobReport;
+import de.uni_stuttgart.ipvs_as.MapReduceWSI;
+import de.uni_stuttgart.ipvs_as.Trace;
+
+/**
+ * Non-blocking variant of {@link MapReduceWSI} as provided by
+ * {@link MapReduceWSIClient#async}.
+ *
+ * Every method has the same name and parameters as its counterpart in
+ * {@link MapReduceWSI}, issues the call in the background and returns
+ * immediately. The returned {@link Future} yields the result of the call or
+ * throws an {@link java.util.concurrent.ExecutionException} whose cause is
+ * the exception thrown by the call (i.e. a
+ * {@link de.uni_stuttgart.ipvs_as.MapReduceWSIException}).
+ *
+ * Note that this is unrelated to the *Async operations of {@link MapReduceWSI}
+ * itself, which run on the service and report back via HTTP callbacks. Their
+ * non-blocking variants here merely wait for the operation to be submitted.
+ *
+ * @author acgessler
+ */
+public interface AsyncMapReduceWSI {
+
+	Future<Long> createScope();
+
+	Future<Void> deleteScope(long scopeId);
+
+	Future<Void> runMapReduce(long scopeId, String srcJarName,
+			String[] arguments);
+
+	Future<String> runMapReduceWithMode(long scopeId, String srcJarName,
+			String[] arguments, boolean forceCluster);
+
+	Future<Void> runStreamingMapReduce(long scopeId, String mapperScript,
+			String reducerScript, String input, String output);
+
+	Future<String> runStreamingMapReduceWithMode(long scopeId,
+			String mapperScript, String reducerScript, String input,
+			String output, boolean forceCluster);
+
+	Future<DryRunResult> dryRunStreaming(long scopeId, String mapperScript,
+			String reducerScript, String input, long sampleBytes);
+
+	Future<Void> importIntoHDFS(long scopeId, String jdbcURI, String dbUser,
+			String dbCredentials, String query, String partitionColumn,
+			String destinationName);
+
+	Future<Void> exportToRDBMS(long scopeId, String jdbcURI, String dbUser,
+			String dbCredentials, String tableName, String sourceName);
+
+	Future<String> importSharedDataset(String datasetName, String jdbcURI,
+			String dbUser, String dbCredentials, String query,
+			String partitionColumn, long maxAgeSeconds);
+
+	Future<String> attachSharedDataset(long scopeId, String datasetName);
+
+	Future<Void> detachSharedDataset(long scopeId, String datasetName);
+
+	Future<Long> runMapReduceAsync(long scopeId, String srcJarName,
+			String[] arguments, String callbackURL);
+
+	Future<Long> runMapReduceWithModeAsync(long scopeId, String srcJarName,
+			String[] arguments, boolean forceCluster, String callbackURL);
+
+	Future<Long> runStreamingMapReduceAsync(long scopeId,
+			String mapperScript, String reducerScript, String input,
+			String output, String callbackURL);
+
+	Future<Long> runStreamingMapReduceWithModeAsync(long scopeId,
+			String mapperScript, String reducerScript, String input,
+			String output, boolean forceCluster, String callbackURL);
+
+	Future<Long> importIntoHDFSAsync(long scopeId, String jdbcURI,
+			String dbUser, String dbCredentials, String query,
+			String partitionColumn, String destinationName, String callbackURL);
+
+	Future<ImportResult[]> importIntoHDFSBatch(long scopeId, String jdbcURI,
+			String dbUser, String dbCredentials, ImportSpec[] imports,
+			int parallelism);
+
+	Future<long[]> listScopes();
+
+	Future<JobInfo[]> listJobs(long scopeId);
+
+	Future<Trace> getTrace(long operationId);
+
+	Future<Trace[]> listTraces(int maxCount);
+
+	Future<CompactionResult> compact(long scopeId, String name,
+			long targetFileSize, boolean compress);
+
+	Future<JobReport[]> getJobReport(long operationId);
+
+	Future<Void> putIntoHDFS(long scopeId, String srcFileName,
+			String destinationName);
+}
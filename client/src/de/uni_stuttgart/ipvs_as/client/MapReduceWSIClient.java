@@ -0,0 +1,320 @@
+package de.uni_stuttgart.ipvs_as.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.xml.namespace.QName;
+import javax.xml.ws.Service;
+import javax.xml.ws.soap.SOAPBinding;
+
+import de.uni_stuttgart.ipvs_as.MapReduceWSI;
+import de.uni_stuttgart.ipvs_as.MapReduceWSIException;
+
+/**
+ * Java client for MapReduceWSI. A client is meant to be created once per
+ * process and shared by all threads:
+ *
+ * <pre>
+ * MapReduceWSIClient client = new MapReduceWSIClient(
+ * 		&quot;http://localhost:8080/mapreduce-wsi&quot;);
+ * long scopeId = client.sync().createScope();
+ * Future&lt;String&gt; mode = client.async().runMapReduceWithMode(scopeId,
+ * 		client.upload(scopeId, new File(&quot;job.jar&quot;)), new String[0], false);
+ * </pre>
+ *
+ * Unlike ports obtained via {@link Service#create(URL, QName)}, the client
+ * does not fetch and parse the service's WSDL. The SOAP binding is derived
+ * from the annotations of {@link MapReduceWSI} instead, which is what the
+ * service's WSDL is generated from in the first place. Creating a client
+ * thus costs no round trip.
+ *
+ * Calls are made on a pool of ports, each used by one thread at a time, so
+ * any number of threads can issue calls concurrently. The underlying HTTP
+ * connections are kept alive and reused between calls.
+ *
+ * @author acgessler
+ */
+public class MapReduceWSIClient {
+
+	public static final String SERVICE_NAMESPACE = "http://ipvs_as.uni_stuttgart.de/";
+
+	private static final QName SERVICE_NAME = new QName(SERVICE_NAMESPACE,
+			"MapReduceWSIImplService");
+	private static final QName PORT_NAME = new QName(SERVICE_NAMESPACE,
+			"MapReduceWSIImplPort");
+
+	private static final int UPLOAD_CHUNK_BYTES = 65536;
+
+	static {
+		// The SOAP calls go through HttpURLConnection, which by default keeps
+		// only 5 idle connections per server alive. Any further concurrent
+		// calls would open a new connection each time. This only has an
+		// effect if no HTTP connection was made in this process before.
+		if (System.getProperty("http.maxConnections") == null) {
+			System.setProperty("http.maxConnections", "256");
+		}
+	}
+
+	private final String serviceURL;
+	private final Service service;
+	private final Queue<MapReduceWSI> ports = new ConcurrentLinkedQueue<MapReduceWSI>();
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+
+	private final MapReduceWSI sync;
+	private final AsyncMapReduceWSI async;
+
+	// Method of MapReduceWSI to invoke for each method of AsyncMapReduceWSI
+	private final Map<Method, Method> asyncTargets = new HashMap<Method, Method>();
+
+	/**
+	 * Create a client that runs non-blocking calls on its own threads.
+	 *
+	 * @param serviceURL
+	 *            URL under which the service is deployed, i.e.
+	 *            "http://localhost:8080/mapreduce-wsi"
+	 */
+	public MapReduceWSIClient(String serviceURL) {
+		this(serviceURL, Executors.newCachedThreadPool(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				final Thread thread = new Thread(runnable,
+						"mapreduce-wsi-client");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}), true);
+	}
+
+	/**
+	 * Create a client that runs non-blocking calls on |executor|. The
+	 * executor is not shut down by {@link #close}.
+	 */
+	public MapReduceWSIClient(String serviceURL, ExecutorService executor) {
+		this(serviceURL, executor, false);
+	}
+
+	private MapReduceWSIClient(String serviceURL, ExecutorService pool,
+			boolean ownsExecutor) {
+		this.serviceURL = serviceURL.replaceAll("/+$", "");
+		this.executor = pool;
+		this.ownsExecutor = ownsExecutor;
+
+		service = Service.create(SERVICE_NAME);
+		service.addPort(PORT_NAME, SOAPBinding.SOAP11HTTP_BINDING,
+				this.serviceURL + "/mapreduce");
+
+		for (Method method : AsyncMapReduceWSI.class.getMethods()) {
+			try {
+				asyncTargets.put(method, MapReduceWSI.class.getMethod(
+						method.getName(), method.getParameterTypes()));
+			} catch (NoSuchMethodException e) {
+				throw new IllegalStateException(
+						"AsyncMapReduceWSI does not match MapReduceWSI: "
+								+ method, e);
+			}
+		}
+		// Every web method must be callable asynchronously as well
+		for (Method method : MapReduceWSI.class.getMethods()) {
+			try {
+				AsyncMapReduceWSI.class.getMethod(method.getName(),
+						method.getParameterTypes());
+			} catch (NoSuchMethodException e) {
+				throw new IllegalStateException(
+						"AsyncMapReduceWSI lacks a counterpart of " + method, e);
+			}
+		}
+
+		sync = (MapReduceWSI) Proxy.newProxyInstance(
+				MapReduceWSI.class.getClassLoader(),
+				new Class<?>[] { MapReduceWSI.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] arguments) throws Throwable {
+						return invokeOnPort(method, arguments);
+					}
+				});
+		async = (AsyncMapReduceWSI) Proxy.newProxyInstance(
+				AsyncMapReduceWSI.class.getClassLoader(),
+				new Class<?>[] { AsyncMapReduceWSI.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							final Object[] arguments) throws Throwable {
+						final Method target = asyncTargets.get(method);
+						if (target == null) {
+							// Methods of Object
+							return method.invoke(MapReduceWSIClient.this,
+									arguments);
+						}
+						return executor.submit(new Callable<Object>() {
+							public Object call() throws Exception {
+								try {
+									return invokeOnPort(target, arguments);
+								} catch (Exception e) {
+									throw e;
+								} catch (Error e) {
+									throw e;
+								} catch (Throwable t) {
+									throw new IllegalStateException(t);
+								}
+							}
+						});
+					}
+				});
+	}
+
+	/**
+	 * Get a view of the service whose methods block until the call completed.
+	 * It can be used by any number of threads concurrently.
+	 */
+	public MapReduceWSI sync() {
+		return sync;
+	}
+
+	/**
+	 * Get a view of the service whose methods return immediately, see
+	 * {@link AsyncMapReduceWSI}. It can be used by any number of threads
+	 * concurrently.
+	 */
+	public AsyncMapReduceWSI async() {
+		return async;
+	}
+
+	/**
+	 * Upload a file to the service machine, i.e. to then run it as JAR via
+	 * {@link MapReduceWSI#runMapReduce} or put it into HDFS via
+	 * {@link MapReduceWSI#putIntoHDFS}. The file is streamed, so files of any
+	 * size can be uploaded.
+	 *
+	 * @return Path of the uploaded file on the service machine
+	 */
+	public String upload(long scopeId, File file) throws IOException {
+		final URL url = new URL(String.format("%s/upload/%s/%s", serviceURL,
+				scopeId, URLEncoder.encode(file.getName(), "UTF-8")));
+		final HttpURLConnection connection = (HttpURLConnection) url
+				.openConnection();
+		connection.setDoOutput(true);
+		connection.setRequestMethod("PUT");
+		connection.setRequestProperty("Content-Type",
+				"application/octet-stream");
+		// Otherwise HttpURLConnection buffers the whole file in memory to
+		// determine its length.
+		connection.setChunkedStreamingMode(UPLOAD_CHUNK_BYTES);
+
+		final OutputStream out = connection.getOutputStream();
+		try {
+			final InputStream in = new FileInputStream(file);
+			try {
+				final byte[] buffer = new byte[UPLOAD_CHUNK_BYTES];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					out.write(buffer, 0, read);
+				}
+			} finally {
+				in.close();
+			}
+		} finally {
+			out.close();
+		}
+
+		final int status = connection.getResponseCode();
+		final InputStream in = status < 400 ? connection.getInputStream()
+				: connection.getErrorStream();
+
+		// Drain the response fully so the connection is returned to the
+		// keep-alive pool.
+		final ByteArrayOutputStream response = new ByteArrayOutputStream();
+		if (in != null) {
+			final byte[] buffer = new byte[4096];
+			try {
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					response.write(buffer, 0, read);
+				}
+			} finally {
+				in.close();
+			}
+		}
+		if (status != HttpURLConnection.HTTP_OK) {
+			throw new IOException(String.format("Upload of %s failed (%s): %s",
+					file, status, response.toString("UTF-8")));
+		}
+		return response.toString("UTF-8").trim();
+	}
+
+	/** Non-blocking variant of {@link #upload} */
+	public Future<String> uploadAsync(final long scopeId, final File file) {
+		return executor.submit(new Callable<String>() {
+			public String call() throws Exception {
+				return upload(scopeId, file);
+			}
+		});
+	}
+
+	/**
+	 * Upload a file and put it into HDFS dataset |destinationName| of the
+	 * scope, see {@link MapReduceWSI#putIntoHDFS}.
+	 */
+	public void uploadIntoHDFS(long scopeId, File file, String destinationName)
+			throws IOException, MapReduceWSIException {
+		sync.putIntoHDFS(scopeId, upload(scopeId, file), destinationName);
+	}
+
+	/** Non-blocking variant of {@link #uploadIntoHDFS} */
+	public Future<Void> uploadIntoHDFSAsync(final long scopeId,
+			final File file, final String destinationName) {
+		return executor.submit(new Callable<Void>() {
+			public Void call() throws Exception {
+				uploadIntoHDFS(scopeId, file, destinationName);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Release the client's threads. Calls that are still running complete,
+	 * but no further non-blocking calls can be made.
+	 */
+	public void close() {
+		if (ownsExecutor) {
+			executor.shutdown();
+		}
+	}
+
+	// Invoke |method| of MapReduceWSI on a port from the pool, creating a new
+	// port if all are in use.
+	private Object invokeOnPort(Method method, Object[] arguments)
+			throws Throwable {
+		MapReduceWSI port = ports.poll();
+		if (port == null) {
+			synchronized (service) {
+				port = service.getPort(PORT_NAME, MapReduceWSI.class);
+			}
+		}
+		try {
+			return method.invoke(port, arguments);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		} finally {
+			ports.offer(port);
+		}
+	}
+}
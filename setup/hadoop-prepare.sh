@@ -14,3 +14,23 @@ sudo su hdfs
 useradd mapreduce_wsi
 hadoop fs -mkdir /user/mapreduce_wsi
 hadoop fs -chown mapreduce_wsi /user/mapreduce_wsi
+
+# Optional: start the MapReduceWSI agent, which runs HDFS operations and
+# Streaming job submissions in a warm JVM. Build mapreduce_wsi_agent.jar
+# from agent/src and copy it to the home directory of mapreduce_wsi first.
+# The port must match the agentPort entry in WEB-INF/mapreduce-wsi-config.xml.
+# The agent only listens on localhost, MapReduceWSI reaches it via SSH.
+# Other local users could connect to it as well, so it only accepts
+# connections that present the secret generated below. The file is only
+# readable by mapreduce_wsi, MapReduceWSI reads it via SSH.
+AGENT_PORT=17077
+if [ -f ~mapreduce_wsi/mapreduce_wsi_agent.jar ]; then
+	sudo -u mapreduce_wsi sh -c "cd ~ && umask 077 && \
+		head -c 32 /dev/urandom | od -An -tx1 | tr -d ' \n' \
+		> .mapreduce_wsi_agent_secret"
+	sudo -u mapreduce_wsi sh -c "cd ~ && \
+		HADOOP_CLASSPATH=/usr/lib/hadoop-mapreduce/hadoop-streaming.jar \
+		nohup hadoop jar mapreduce_wsi_agent.jar \
+		de.uni_stuttgart.ipvs_as.agent.MapReduceWSIAgent $AGENT_PORT \
+		> mapreduce_wsi_agent.log 2>&1 &"
+fi
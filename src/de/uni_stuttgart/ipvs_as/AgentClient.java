@@ -0,0 +1,324 @@
+package de.uni_stuttgart.ipvs_as;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
+/**
+ * Client for the optional MapReduceWSI agent, a long-running process on the
+ * remote host that performs HDFS operations and job submissions in a warm JVM
+ * (see <code>de.uni_stuttgart.ipvs_as.agent.MapReduceWSIAgent</code>). This avoids
+ * paying the 1-3 s JVM startup of the hadoop/yarn CLIs for every command.
+ *
+ * The agent only listens on the loopback interface of the remote host. It is
+ * reached through a single, persistent SSH session that forwards a local port
+ * to the agent's port. Multiple requests can be in flight at the same time,
+ * each on its own (pooled) connection through the forwarded port.
+ *
+ * If the agent cannot be reached, the client backs off for a while before
+ * trying again. Callers are expected to fall back to the CLI in the meantime.
+ *
+ * <b>Protocol</b>: the first line on every connection is the agent's secret,
+ * which setup/hadoop-prepare.sh stores in a file only readable by the remote
+ * user. The client reads it through its SSH session. The agent acknowledges
+ * it with "OK" (or closes the connection). Then follow requests, one per line, consisting of the operation name
+ * followed by its arguments, separated by single spaces and each URL-encoded.
+ * The agent answers each request with a single line that starts with either
+ * "OK" followed by the (URL-encoded) results or "ERR" followed by the
+ * (URL-encoded) error message.
+ *
+ * @author acgessler
+ */
+public class AgentClient {
+
+	private static final String ENCODING = "UTF-8";
+	private static final int SSH_PORT = 22;
+	private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+
+	// Time to wait before trying to reach the agent again after a failure
+	private static final long RETRY_AFTER_FAILURE_MILLIS = 60000;
+
+	// File holding the agent's secret, relative to the remote user's home
+	private static final String SECRET_FILE_NAME = ".mapreduce_wsi_agent_secret";
+
+	// Operations that can be sent again if the outcome of a previous attempt
+	// is unknown
+	private static final Set<String> IDEMPOTENT_OPERATIONS = new HashSet<String>(
+			Arrays.asList("ping", "mkdir", "chmod", "contentSummary"));
+
+	private final String host;
+	private final String user;
+	private final String password;
+	private final int agentPort;
+
+	private Session session;
+	private String secret;
+	private int localPort;
+	private long retryAfter;
+	private final LinkedList<PooledSocket> idle = new LinkedList<PooledSocket>();
+
+	/**
+	 * @param host
+	 *            Remote host to SSH to
+	 * @param user
+	 *            SSH user name
+	 * @param password
+	 *            SSH password
+	 * @param agentPort
+	 *            Port the agent listens on (on the remote host's loopback
+	 *            interface)
+	 */
+	public AgentClient(String host, String user, String password, int agentPort) {
+		this.host = host;
+		this.user = user;
+		this.password = password;
+		this.agentPort = agentPort;
+	}
+
+	/**
+	 * Run |operation| on the agent.
+	 *
+	 * @param readTimeoutMillis
+	 *            Maximum time to wait for the result, 0 to wait indefinitely.
+	 * @return Results of the operation or null if the agent is currently not
+	 *         available, in which case the caller should fall back to the CLI.
+	 * @throws MapReduceWSIException
+	 *             If the agent ran the operation, but it failed, or if the
+	 *             connection was lost while the operation was in progress. In
+	 *             the latter case the outcome is unknown, so falling back to
+	 *             the CLI is not safe.
+	 */
+	public String[] call(int readTimeoutMillis, String operation,
+			String... arguments) throws MapReduceWSIException {
+		final StringBuilder request = new StringBuilder();
+		try {
+			request.append(URLEncoder.encode(operation, ENCODING));
+			for (String argument : arguments) {
+				request.append(' ');
+				request.append(URLEncoder.encode(argument, ENCODING));
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		request.append('\n');
+
+		// A pooled connection may have gone stale (i.e. if the agent has been
+		// restarted), which typically only shows after the request was sent.
+		// The agent may have received it nevertheless, so only idempotent
+		// operations are sent over pooled connections and retried once on a
+		// fresh connection. All others always get a fresh connection.
+		final boolean idempotent = IDEMPOTENT_OPERATIONS.contains(operation);
+		for (int attempt = 0; attempt < 2; ++attempt) {
+			final PooledSocket socket = acquireSocket(attempt > 0
+					|| !idempotent);
+			if (socket == null) {
+				return null;
+			}
+			final boolean reused = socket.reused;
+			socket.reused = true;
+
+			final String response;
+			try {
+				socket.socket.setSoTimeout(readTimeoutMillis);
+				final Writer writer = new OutputStreamWriter(
+						socket.socket.getOutputStream(), ENCODING);
+				writer.write(request.toString());
+				writer.flush();
+				response = socket.reader.readLine();
+				if (response == null) {
+					throw new IOException("Connection closed by agent");
+				}
+			} catch (SocketTimeoutException e) {
+				closeQuietly(socket.socket);
+				throw new MapReduceWSIException(
+						"Timed out waiting for agent to complete " + operation,
+						e);
+			} catch (IOException e) {
+				closeQuietly(socket.socket);
+				if (reused) {
+					continue;
+				}
+				markUnavailable();
+				throw new MapReduceWSIException(
+						"Lost connection to agent while running " + operation,
+						e);
+			}
+			releaseSocket(socket);
+			return parseResponse(response);
+		}
+		return null;
+	}
+
+	/** Close all connections and the SSH session */
+	public synchronized void close() {
+		for (PooledSocket socket : idle) {
+			closeQuietly(socket.socket);
+		}
+		idle.clear();
+		if (session != null) {
+			session.disconnect();
+			session = null;
+		}
+	}
+
+	private String[] parseResponse(String response)
+			throws MapReduceWSIException {
+		final String[] parts = response.split(" ", -1);
+		final String[] results = new String[parts.length - 1];
+		try {
+			for (int i = 1; i < parts.length; ++i) {
+				results[i - 1] = URLDecoder.decode(parts[i], ENCODING);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		if (parts[0].equals("OK")) {
+			return results;
+		}
+		throw new MapReduceWSIException("Agent reported failure: "
+				+ (results.length > 0 ? results[0] : response));
+	}
+
+	// A socket together with the reader wrapping its input stream. Both need
+	// to be pooled together, the reader may have buffered data.
+	private static class PooledSocket {
+		final Socket socket;
+		final BufferedReader reader;
+		boolean reused;
+
+		PooledSocket(Socket socket) throws IOException {
+			this.socket = socket;
+			this.reader = new BufferedReader(new InputStreamReader(
+					socket.getInputStream(), ENCODING));
+		}
+	}
+
+	// Get an idle connection to the agent or open a new one. Returns null if
+	// the agent is not available.
+	private synchronized PooledSocket acquireSocket(boolean forceNew) {
+		if (!forceNew && !idle.isEmpty()) {
+			return idle.removeFirst();
+		}
+		if (System.currentTimeMillis() < retryAfter) {
+			return null;
+		}
+
+		try {
+			if (session == null || !session.isConnected()) {
+				connectSession();
+			}
+			final Socket socket = new Socket("127.0.0.1", localPort);
+			try {
+				socket.setTcpNoDelay(true);
+				socket.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+				final PooledSocket pooledSocket = new PooledSocket(socket);
+				final Writer writer = new OutputStreamWriter(
+						socket.getOutputStream(), ENCODING);
+				writer.write(secret);
+				writer.write('\n');
+				writer.flush();
+				if (!"OK".equals(pooledSocket.reader.readLine())) {
+					throw new IOException("Agent rejected secret");
+				}
+				return pooledSocket;
+			} catch (IOException e) {
+				closeQuietly(socket);
+				throw e;
+			}
+		} catch (IOException e) {
+			markUnavailable();
+		} catch (JSchException e) {
+			markUnavailable();
+		}
+		return null;
+	}
+
+	private synchronized void releaseSocket(PooledSocket socket) {
+		idle.addFirst(socket);
+	}
+
+	private synchronized void markUnavailable() {
+		retryAfter = System.currentTimeMillis() + RETRY_AFTER_FAILURE_MILLIS;
+		for (PooledSocket socket : idle) {
+			closeQuietly(socket.socket);
+		}
+		idle.clear();
+		if (session != null) {
+			session.disconnect();
+			session = null;
+		}
+	}
+
+	private void connectSession() throws JSchException {
+		final JSch jsch = new JSch();
+		final Session newSession = jsch.getSession(user, host, SSH_PORT);
+		newSession.setPassword(password);
+		// Consistent with SSHXCUTE, which does not check host keys either
+		newSession.setConfig("StrictHostKeyChecking", "no");
+		newSession.setServerAliveInterval(30000);
+		newSession.connect(CONNECT_TIMEOUT_MILLIS);
+		try {
+			secret = readSecret(newSession);
+		} catch (IOException e) {
+			newSession.disconnect();
+			throw new JSchException("Failed to read agent secret", e);
+		} catch (JSchException e) {
+			newSession.disconnect();
+			throw e;
+		}
+
+		// Port 0 lets the OS pick a free local port
+		localPort = newSession.setPortForwardingL(0, "127.0.0.1", agentPort);
+		session = newSession;
+	}
+
+	// Read the agent's secret from the remote host
+	private static String readSecret(Session session) throws JSchException,
+			IOException {
+		final ChannelExec channel = (ChannelExec) session.openChannel("exec");
+		try {
+			channel.setCommand("cat " + SECRET_FILE_NAME);
+			final InputStream in = channel.getInputStream();
+			channel.connect(CONNECT_TIMEOUT_MILLIS);
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[256];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			final String secret = out.toString(ENCODING).trim();
+			if (secret.length() == 0) {
+				throw new IOException("No agent secret in ~/" + SECRET_FILE_NAME);
+			}
+			return secret;
+		} finally {
+			channel.disconnect();
+		}
+	}
+
+	private static void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// Nothing we can do about it
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package de.uni_stuttgart.ipvs_as;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletContext;
+
+/**
+ * Delivers {@link CompletionEvent}s to client-provided callback URLs by
+ * POSTing them as JSON.
+ *
+ * Deliveries happen on a small dedicated thread pool so slow or unreachable
+ * clients never hold up operations. Failed deliveries (connection errors or
+ * non-2xx responses) are retried with exponential backoff up to a bounded
+ * number of attempts, after which the event is dropped.
+ *
+ * Callback URLs are chosen by clients, so the service must not become a way
+ * to reach hosts only it can reach. Callbacks may only go to configured
+ * hosts or, if none are configured, to public addresses.
+ *
+ * @author acgessler
+ */
+public class CallbackNotifier {
+
+	private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+	private static final int READ_TIMEOUT_MILLIS = 30000;
+
+	private final ServletContext servletContext;
+	private final ScheduledExecutorService executor;
+	private final int maxAttempts;
+	private final long initialBackoffMillis;
+	private final String[] allowedHosts;
+
+	/**
+	 * Create a notifier that delivers callbacks to any public address.
+	 * 
+	 * @see #CallbackNotifier(ServletContext, int, int, long, String[])
+	 */
+	public CallbackNotifier(ServletContext servletContext, int threads,
+			int maxAttempts, long initialBackoffMillis) {
+		this(servletContext, threads, maxAttempts, initialBackoffMillis, null);
+	}
+
+	/**
+	 * @param servletContext
+	 *            Servlet context to log abandoned deliveries to
+	 * @param threads
+	 *            Number of threads used for deliveries
+	 * @param maxAttempts
+	 *            Maximum number of delivery attempts per event
+	 * @param initialBackoffMillis
+	 *            Delay before the first retry. The delay doubles with each
+	 *            further retry.
+	 * @param allowedHosts
+	 *            Host names callbacks may be delivered to. Entries starting
+	 *            with a dot match all subdomains. If null, callbacks may go
+	 *            to any host that does not resolve to a loopback, link-local
+	 *            or private address.
+	 */
+	public CallbackNotifier(ServletContext servletContext, int threads,
+			int maxAttempts, long initialBackoffMillis, String[] allowedHosts) {
+		if (threads < 1 || maxAttempts < 1 || initialBackoffMillis < 0) {
+			throw new IllegalArgumentException(
+					"Invalid callback notifier configuration");
+		}
+		this.servletContext = servletContext;
+		this.executor = Executors.newScheduledThreadPool(threads);
+		this.maxAttempts = maxAttempts;
+		this.initialBackoffMillis = initialBackoffMillis;
+		this.allowedHosts = allowedHosts == null ? null : allowedHosts.clone();
+	}
+
+	/**
+	 * Check that |callbackURL| is usable as a callback URL.
+	 *
+	 * @throws IllegalArgumentException
+	 *             If the URL is malformed, not HTTP(S) or its host is not
+	 *             allowed.
+	 */
+	public void validateCallbackURL(String callbackURL) {
+		final URL url;
+		try {
+			url = new URL(callbackURL);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Malformed |callbackURL|");
+		}
+		if (!url.getProtocol().equals("http")
+				&& !url.getProtocol().equals("https")) {
+			throw new IllegalArgumentException(
+					"|callbackURL| must be a HTTP(S) URL");
+		}
+		if (!isAllowedHost(url.getHost().toLowerCase())) {
+			throw new IllegalArgumentException(
+					"|callbackURL| host is not allowed: " + url.getHost());
+		}
+	}
+
+	private boolean isAllowedHost(String host) {
+		if (allowedHosts != null) {
+			for (String allowed : allowedHosts) {
+				allowed = allowed.trim().toLowerCase();
+				if (allowed.startsWith(".") ? host.endsWith(allowed) : host
+						.equals(allowed)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		try {
+			for (InetAddress address : InetAddress.getAllByName(host)) {
+				if (address.isLoopbackAddress() || address.isAnyLocalAddress()
+						|| address.isLinkLocalAddress()
+						|| address.isSiteLocalAddress()
+						|| address.isMulticastAddress()) {
+					return false;
+				}
+			}
+		} catch (UnknownHostException e) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Asynchronously deliver |event| to |callbackURL|. Returns immediately.
+	 */
+	public void notify(String callbackURL, CompletionEvent event) {
+		executor.execute(new Delivery(callbackURL, event));
+	}
+
+	/**
+	 * Stop accepting new deliveries. Pending retries are abandoned.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	private class Delivery implements Runnable {
+		private final String callbackURL;
+		private final CompletionEvent event;
+		private int attempt = 1;
+
+		Delivery(String callbackURL, CompletionEvent event) {
+			this.callbackURL = callbackURL;
+			this.event = event;
+		}
+
+		public void run() {
+			try {
+				post();
+				return;
+			} catch (IOException e) {
+				if (attempt >= maxAttempts) {
+					servletContext.log(String.format(
+							"Giving up delivering completion event of "
+									+ "operation %s to %s after %s attempts (%s)",
+							event.getOperationId(), callbackURL, attempt,
+							e.toString()));
+					return;
+				}
+			}
+
+			final long backoff = initialBackoffMillis << (attempt - 1);
+			++attempt;
+			if (!executor.isShutdown()) {
+				executor.schedule(this, backoff, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		private void post() throws IOException {
+			final HttpURLConnection connection = (HttpURLConnection) new URL(
+					callbackURL).openConnection();
+			connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+			connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+			connection.setDoOutput(true);
+			connection.setRequestMethod("POST");
+			connection.setRequestProperty("Content-Type",
+					"application/json; charset=UTF-8");
+			// Redirects could lead to hosts that are not allowed
+			connection.setInstanceFollowRedirects(false);
+			try {
+				final Writer writer = new OutputStreamWriter(
+						connection.getOutputStream(), "UTF-8");
+				try {
+					Json.write(writer, event.toMap());
+				} finally {
+					writer.close();
+				}
+
+				final int status = connection.getResponseCode();
+				if (status < 200 || status >= 300) {
+					throw new IOException("Callback returned HTTP status "
+							+ status);
+				}
+
+				// Drain the response so the connection can be reused for
+				// further deliveries to the same host
+				final InputStream in = connection.getInputStream();
+				try {
+					final byte[] buffer = new byte[1024];
+					while (in.read(buffer) != -1) {
+					}
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				connection.disconnect();
+				throw e;
+			}
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package de.uni_stuttgart.ipvs_as;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Outcome of compacting a dataset via {@link MapReduceWSI#compact}.
+ *
+ * @author acgessler
+ */
+public class CompactionResult {
+
+	private long filesBefore;
+	private long filesAfter;
+	private long bytesBefore;
+	private long bytesAfter;
+
+	public CompactionResult() {
+	}
+
+	public CompactionResult(long filesBefore, long filesAfter,
+			long bytesBefore, long bytesAfter) {
+		this.filesBefore = filesBefore;
+		this.filesAfter = filesAfter;
+		this.bytesBefore = bytesBefore;
+		this.bytesAfter = bytesAfter;
+	}
+
+	public long getFilesBefore() {
+		return filesBefore;
+	}
+
+	public void setFilesBefore(long filesBefore) {
+		this.filesBefore = filesBefore;
+	}
+
+	public long getFilesAfter() {
+		return filesAfter;
+	}
+
+	public void setFilesAfter(long filesAfter) {
+		this.filesAfter = filesAfter;
+	}
+
+	/** Size of the dataset in HDFS before compaction */
+	public long getBytesBefore() {
+		return bytesBefore;
+	}
+
+	public void setBytesBefore(long bytesBefore) {
+		this.bytesBefore = bytesBefore;
+	}
+
+	/** Size of the dataset in HDFS after compaction (and compression) */
+	public long getBytesAfter() {
+		return bytesAfter;
+	}
+
+	public void setBytesAfter(long bytesAfter) {
+		this.bytesAfter = bytesAfter;
+	}
+
+	/** Get a representation suitable for {@link Json#write} */
+	public Map<String, Object> toMap() {
+		final Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("filesBefore", filesBefore);
+		map.put("filesAfter", filesAfter);
+		map.put("bytesBefore", bytesBefore);
+		map.put("bytesAfter", bytesAfter);
+		return map;
+	}
+}
@@ -0,0 +1,88 @@
+package de.uni_stuttgart.ipvs_as;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact description of a finished asynchronous operation, as delivered to
+ * callback URLs by {@link CallbackNotifier}.
+ *
+ * The JSON representation (see {@link #toMap}) looks like
+ *
+ * <pre>
+ * {"operationId": 42, "operation": "runStreamingMapReduce", "scopeId": 1234,
+ *  "status": "SUCCEEDED", "durationMillis": 81234,
+ *  "outputPaths": ["/user/mapreduce_wsi/1234/mr_output"], "error": null}
+ * </pre>
+ *
+ * @author acgessler
+ */
+public class CompletionEvent {
+
+	public static final String STATUS_SUCCEEDED = "SUCCEEDED";
+	public static final String STATUS_FAILED = "FAILED";
+
+	private final long operationId;
+	private final String operation;
+	private final long scopeId;
+	private final String status;
+	private final long durationMillis;
+	private final List<String> outputPaths;
+	private final String error;
+
+	public CompletionEvent(long operationId, String operation, long scopeId,
+			String status, long durationMillis, String[] outputPaths,
+			String error) {
+		this.operationId = operationId;
+		this.operation = operation;
+		this.scopeId = scopeId;
+		this.status = status;
+		this.durationMillis = durationMillis;
+		this.outputPaths = Arrays.asList(outputPaths);
+		this.error = error;
+	}
+
+	public long getOperationId() {
+		return operationId;
+	}
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public long getScopeId() {
+		return scopeId;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	public List<String> getOutputPaths() {
+		return outputPaths;
+	}
+
+	/** Error message if the operation failed, null otherwise */
+	public String getError() {
+		return error;
+	}
+
+	/** Get a representation suitable for {@link Json#write} */
+	public Map<String, Object> toMap() {
+		final Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("operationId", operationId);
+		map.put("operation", operation);
+		map.put("scopeId", scopeId);
+		map.put("status", status);
+		map.put("durationMillis", durationMillis);
+		map.put("outputPaths", outputPaths);
+		map.put("error", error);
+		return map;
+	}
+}
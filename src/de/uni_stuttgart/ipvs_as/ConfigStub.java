@@ -1,5 +1,7 @@
 package de.uni_stuttgart.ipvs_as;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Properties;
 
 import javax.servlet.ServletContext;
@@ -39,10 +41,139 @@ public class ConfigStub implements ServletContextListener {
 		// Store the bean in application context
 		ServletContext context = sce.getServletContext();
 		context.setAttribute("config", properties);
+
+		// Partition column statistics for balanced imports
+		context.setAttribute("splitStatistics", new SplitStatisticsCache(
+				getIntProperty(properties, "maxSplitStatistics", 1000)));
+
+		// Local registry of scopes and jobs. Relative paths are resolved
+		// against the home directory of the user running the service.
+		File registryFile = new File(properties.getProperty("registryFile",
+				".mapreduce_wsi/registry.log"));
+		if (!registryFile.isAbsolute()) {
+			registryFile = new File(System.getProperty("user.home"),
+					registryFile.getPath());
+		}
+		final JobRegistry registry;
+		try {
+			registry = new JobRegistry(registryFile);
+		} catch (IOException e) {
+			context.log("CRITICAL: failed to open mapreduce-wsi registry "
+					+ registryFile, e);
+			return;
+		}
+		context.setAttribute("registry", registry);
+		context.log("Opened mapreduce-wsi registry " + registryFile);
+
+		// Shared datasets outlive individual requests and restarts
+		context.setAttribute("catalog", new DatasetCatalog(registry));
+
+		// Commands on the remote host. Each runs in its own SSH session, so
+		// concurrent operations do not wait for each other. Test harnesses
+		// replace this to stub out the remote host.
+		context.setAttribute("remote", new SSHRemoteExecutor(
+				properties.getProperty("remoteHost"),
+				properties.getProperty("remoteUser"),
+				properties.getProperty("remotePassword"), getIntProperty(
+						properties, "maxRemoteSessions", 8)));
+
+		// Timelines of recent operations, see MapReduceWSI.getTrace()
+		context.setAttribute("traces", new TraceStore(getIntProperty(
+				properties, "maxTraces", 1000)));
+
+		// Optional agent on the remote host, see AgentClient
+		if (properties.getProperty("agentPort") != null) {
+			context.setAttribute("agent", new AgentClient(
+					properties.getProperty("remoteHost"),
+					properties.getProperty("remoteUser"),
+					properties.getProperty("remotePassword"), getIntProperty(
+							properties, "agentPort", 0)));
+		}
+
+		// Background execution of asynchronous operations
+		final CallbackNotifier notifier = new CallbackNotifier(context,
+				getIntProperty(properties, "callbackThreads", 2),
+				getIntProperty(properties, "callbackMaxAttempts", 5),
+				getIntProperty(properties, "callbackInitialBackoffMillis", 1000),
+				properties.getProperty("callbackAllowedHosts") == null ? null
+						: properties.getProperty("callbackAllowedHosts")
+								.split(","));
+		context.setAttribute("operations", new OperationExecutor(context,
+				getIntProperty(properties, "maxConcurrentOperations", 8),
+				notifier, registry));
 	}
 
 	public void contextDestroyed(ServletContextEvent sce) {
 		ServletContext context = sce.getServletContext();
 		context.removeAttribute("config");
+		context.removeAttribute("catalog");
+		context.removeAttribute("splitStatistics");
+		context.removeAttribute("traces");
+		context.removeAttribute("remote");
+
+		final OperationExecutor operations = (OperationExecutor) context
+				.getAttribute("operations");
+		if (operations != null) {
+			operations.shutdown();
+			context.removeAttribute("operations");
+		}
+
+		final AgentClient agent = (AgentClient) context.getAttribute("agent");
+		if (agent != null) {
+			agent.close();
+			context.removeAttribute("agent");
+		}
+
+		final JobRegistry registry = (JobRegistry) context
+				.getAttribute("registry");
+		if (registry != null) {
+			registry.close();
+			context.removeAttribute("registry");
+		}
+	}
+
+	/**
+	 * Get an optional integer-valued configuration entry.
+	 * 
+	 * @return The value of entry |key| or |defaultValue| if there is no such
+	 *         entry.
+	 */
+	public static int getIntProperty(Properties properties, String key,
+			int defaultValue) {
+		final String value = properties.getProperty(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		return Integer.parseInt(value.trim());
+	}
+
+	/**
+	 * Get an optional long-valued configuration entry.
+	 * 
+	 * @return The value of entry |key| or |defaultValue| if there is no such
+	 *         entry.
+	 */
+	public static long getLongProperty(Properties properties, String key,
+			long defaultValue) {
+		final String value = properties.getProperty(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		return Long.parseLong(value.trim());
+	}
+
+	/**
+	 * Get the directory on the service host that holds the files uploaded to
+	 * a scope via {@link MapReduceUploadServlet}. Relative paths are resolved
+	 * against the home directory of the user running the service.
+	 */
+	public static File getUploadDir(Properties properties, long scopeId) {
+		File uploadDir = new File(properties.getProperty("uploadDir",
+				".mapreduce_wsi/uploads"));
+		if (!uploadDir.isAbsolute()) {
+			uploadDir = new File(System.getProperty("user.home"),
+					uploadDir.getPath());
+		}
+		return new File(uploadDir, String.valueOf(scopeId));
 	}
 }
@@ -0,0 +1,299 @@
+package de.uni_stuttgart.ipvs_as;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Catalog of shared, read-only datasets that have been imported once into a
+ * common HDFS area and can be attached to any number of scopes.
+ *
+ * Each import of a dataset produces a new immutable <i>version</i> in its own
+ * HDFS directory. Scopes attach to (and thereby pin) the current version of a
+ * dataset. If the dataset is refreshed while it is still attached, the old
+ * version is retired but kept around until the last scope detaches from it.
+ *
+ * The catalog only does the bookkeeping; all remote operations are carried out
+ * by {@link MapReduceWSIImpl}. All changes are persisted in the
+ * {@link JobRegistry}, from which the catalog is restored on startup. A
+ * single instance is shared by all endpoint instances through the servlet
+ * context (see {@link ConfigStub}).
+ *
+ * @author acgessler
+ */
+public class DatasetCatalog {
+
+	/**
+	 * One version of a shared dataset. Its data never changes, only the time
+	 * it was last validated and the scopes it is attached to do.
+	 */
+	public static class Dataset {
+		private final String name;
+		private final long version;
+		private final String hdfsPath;
+		private final String fingerprint;
+		private long validatedAt;
+		private final Set<Long> attachedScopes = new HashSet<Long>();
+
+		Dataset(String name, long version, String hdfsPath, String fingerprint) {
+			this(name, version, hdfsPath, fingerprint, System
+					.currentTimeMillis());
+		}
+
+		private Dataset(String name, long version, String hdfsPath,
+				String fingerprint, long validatedAt) {
+			this.name = name;
+			this.version = version;
+			this.hdfsPath = hdfsPath;
+			this.fingerprint = fingerprint;
+			this.validatedAt = validatedAt;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getVersion() {
+			return version;
+		}
+
+		/** Absolute HDFS path of this version's (read-only) data */
+		public String getHDFSPath() {
+			return hdfsPath;
+		}
+
+		/**
+		 * Row count and maximum partition column value of the source table at
+		 * the time of import, used to detect stale copies.
+		 */
+		public String getFingerprint() {
+			return fingerprint;
+		}
+
+		/** Time (ms since epoch) at which this version was last known fresh */
+		public synchronized long getValidatedAt() {
+			return validatedAt;
+		}
+
+		synchronized void setValidatedAt(long validatedAt) {
+			this.validatedAt = validatedAt;
+		}
+
+		public synchronized int getReferenceCount() {
+			return attachedScopes.size();
+		}
+	}
+
+	private final Map<String, Dataset> current = new HashMap<String, Dataset>();
+	private final List<Dataset> retired = new ArrayList<Dataset>();
+	// Retired versions handed out for deletion that are not deleted yet
+	private final Set<Dataset> deleting = new HashSet<Dataset>();
+	private final Map<String, Object> importLocks = new HashMap<String, Object>();
+	private final JobRegistry registry;
+	private long nextVersion;
+
+	/** Create the catalog, restoring its contents from |registry| */
+	public DatasetCatalog(JobRegistry registry) {
+		this.registry = registry;
+
+		// Seeded with the current time so versions (and thus HDFS paths) of
+		// failed imports are not reused even across restarts.
+		nextVersion = System.currentTimeMillis();
+
+		// Versions come in ascending order, so the last one of each name is
+		// the current one.
+		for (Map<String, Object> record : registry.listDatasets()) {
+			final Dataset dataset = new Dataset((String) record.get("name"),
+					((Number) record.get("version")).longValue(),
+					(String) record.get("hdfsPath"),
+					(String) record.get("fingerprint"),
+					((Number) (record.containsKey("validatedAt") ? record
+							.get("validatedAt") : record.get("time")))
+							.longValue());
+			for (Object scopeId : (List<?>) record.get("scopes")) {
+				dataset.attachedScopes.add(((Number) scopeId).longValue());
+			}
+			final Dataset previous = current.put(dataset.getName(), dataset);
+			if (previous != null) {
+				retired.add(previous);
+			}
+			nextVersion = Math.max(nextVersion, dataset.getVersion() + 1);
+		}
+	}
+
+	/**
+	 * Get the lock object that serializes (re-)imports of the dataset with the
+	 * given name, so concurrent clients asking for the same dataset only cause
+	 * a single import.
+	 */
+	public synchronized Object getImportLock(String name) {
+		Object lock = importLocks.get(name);
+		if (lock == null) {
+			lock = new Object();
+			importLocks.put(name, lock);
+		}
+		return lock;
+	}
+
+	/** Get the current version of a dataset or null if there is none */
+	public synchronized Dataset get(String name) {
+		return current.get(name);
+	}
+
+	/**
+	 * Record that |dataset| was found to still match its source, which
+	 * extends its lifetime until it is checked again.
+	 */
+	public synchronized void markValidated(Dataset dataset)
+			throws IOException {
+		final long now = System.currentTimeMillis();
+		registry.datasetValidated(dataset.getVersion(), now);
+		dataset.setValidatedAt(now);
+	}
+
+	/** Allocate a fresh, catalog-wide unique version number */
+	public synchronized long allocateVersion() {
+		return nextVersion++;
+	}
+
+	/**
+	 * Make |dataset| the current version for its name. The previous version
+	 * (if any) is retired.
+	 *
+	 * @return Versions that are no longer current and are not attached to any
+	 *         scope. The caller is responsible for deleting their data and
+	 *         reporting back through {@link #deleted} or
+	 *         {@link #deleteFailed}.
+	 */
+	public synchronized List<Dataset> publish(Dataset dataset)
+			throws IOException {
+		registry.datasetPublished(dataset.getName(), dataset.getVersion(),
+				dataset.getHDFSPath(), dataset.getFingerprint());
+		final Dataset previous = current.put(dataset.getName(), dataset);
+		if (previous != null) {
+			retired.add(previous);
+		}
+		return collectUnreferenced();
+	}
+
+	/**
+	 * Attach the current version of a dataset to a scope.
+	 *
+	 * @return The attached version or null if no dataset of that name exists.
+	 */
+	public synchronized Dataset attach(long scopeId, String name)
+			throws IOException {
+		final Dataset dataset = current.get(name);
+		if (dataset == null) {
+			return null;
+		}
+		registry.datasetAttached(scopeId, dataset.getVersion());
+		synchronized (dataset) {
+			dataset.attachedScopes.add(scopeId);
+		}
+		return dataset;
+	}
+
+	/**
+	 * Find the version of a dataset that is attached to the given scope.
+	 *
+	 * @return The attached version or null if the scope has no dataset of this
+	 *         name attached.
+	 */
+	public synchronized Dataset findAttached(long scopeId, String name) {
+		for (Dataset dataset : allVersions()) {
+			if (dataset.getName().equals(name)) {
+				synchronized (dataset) {
+					if (dataset.attachedScopes.contains(scopeId)) {
+						return dataset;
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Detach a dataset from a scope.
+	 *
+	 * @return Retired versions that are no longer referenced by any scope.
+	 *         The caller is responsible for deleting their data, see
+	 *         {@link #publish}.
+	 */
+	public synchronized List<Dataset> detach(long scopeId, String name)
+			throws IOException {
+		final Dataset dataset = findAttached(scopeId, name);
+		if (dataset != null) {
+			registry.datasetDetached(scopeId, dataset.getVersion());
+			synchronized (dataset) {
+				dataset.attachedScopes.remove(scopeId);
+			}
+		}
+		return collectUnreferenced();
+	}
+
+	/**
+	 * Detach all datasets from a scope, i.e. when it is deleted.
+	 *
+	 * @return Retired versions that are no longer referenced by any scope.
+	 *         The caller is responsible for deleting their data, see
+	 *         {@link #publish}.
+	 */
+	public synchronized List<Dataset> detachAll(long scopeId)
+			throws IOException {
+		for (Dataset dataset : allVersions()) {
+			synchronized (dataset) {
+				if (!dataset.attachedScopes.contains(scopeId)) {
+					continue;
+				}
+			}
+			registry.datasetDetached(scopeId, dataset.getVersion());
+			synchronized (dataset) {
+				dataset.attachedScopes.remove(scopeId);
+			}
+		}
+		return collectUnreferenced();
+	}
+
+	/**
+	 * Drop a version returned for deletion once its data has been deleted.
+	 */
+	public synchronized void deleted(Dataset dataset) throws IOException {
+		registry.datasetDropped(dataset.getVersion());
+		retired.remove(dataset);
+		deleting.remove(dataset);
+	}
+
+	/**
+	 * Keep a version returned for deletion whose data could not be deleted.
+	 * It is returned for deletion again by the next call that collects
+	 * unreferenced versions.
+	 */
+	public synchronized void deleteFailed(Dataset dataset) {
+		deleting.remove(dataset);
+	}
+
+	private List<Dataset> allVersions() {
+		final List<Dataset> all = new ArrayList<Dataset>(current.values());
+		all.addAll(retired);
+		return all;
+	}
+
+	// Versions stay retired (and recorded) until their data is deleted, so
+	// they are not forgotten if deleting fails
+	private List<Dataset> collectUnreferenced() {
+		final List<Dataset> unreferenced = new ArrayList<Dataset>();
+		for (Dataset dataset : retired) {
+			if (dataset.getReferenceCount() == 0
+					&& !deleting.contains(dataset)) {
+				unreferenced.add(dataset);
+			}
+		}
+		deleting.addAll(unreferenced);
+		return unreferenced;
+	}
+}
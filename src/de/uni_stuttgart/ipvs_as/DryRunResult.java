@@ -0,0 +1,102 @@
+package de.uni_stuttgart.ipvs_as;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Outcome of a local dry run of Streaming Mode scripts via
+ * {@link MapReduceWSI#dryRunStreaming}.
+ *
+ * @author acgessler
+ */
+public class DryRunResult {
+
+	private long inputBytes;
+	private int exitCode;
+	private boolean timedOut;
+	private boolean truncated;
+	private String output;
+	private String error;
+
+	public DryRunResult() {
+	}
+
+	public DryRunResult(long inputBytes, int exitCode, boolean timedOut,
+			boolean truncated, String output, String error) {
+		this.inputBytes = inputBytes;
+		this.exitCode = exitCode;
+		this.timedOut = timedOut;
+		this.truncated = truncated;
+		this.output = output;
+		this.error = error;
+	}
+
+	/** Size of the input sample the scripts were run on */
+	public long getInputBytes() {
+		return inputBytes;
+	}
+
+	public void setInputBytes(long inputBytes) {
+		this.inputBytes = inputBytes;
+	}
+
+	/**
+	 * Exit code of the <code>mapper | sort | reducer</code> pipeline, i.e. the
+	 * exit code of the last script that failed or 0
+	 */
+	public int getExitCode() {
+		return exitCode;
+	}
+
+	public void setExitCode(int exitCode) {
+		this.exitCode = exitCode;
+	}
+
+	/** Whether the scripts were killed for exceeding the time limit */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+	public void setTimedOut(boolean timedOut) {
+		this.timedOut = timedOut;
+	}
+
+	/** Whether |output| or |error| were cut off at the size limit */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	public void setTruncated(boolean truncated) {
+		this.truncated = truncated;
+	}
+
+	/** Output of the reducer script */
+	public String getOutput() {
+		return output;
+	}
+
+	public void setOutput(String output) {
+		this.output = output;
+	}
+
+	/** Combined stderr of both scripts and of reading the input sample */
+	public String getError() {
+		return error;
+	}
+
+	public void setError(String error) {
+		this.error = error;
+	}
+
+	/** Get a representation suitable for {@link Json#write} */
+	public Map<String, Object> toMap() {
+		final Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("inputBytes", inputBytes);
+		map.put("exitCode", exitCode);
+		map.put("timedOut", timedOut);
+		map.put("truncated", truncated);
+		map.put("output", output);
+		map.put("error", error);
+		return map;
+	}
+}
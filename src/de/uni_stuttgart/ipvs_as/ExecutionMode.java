@@ -0,0 +1,30 @@
+package de.uni_stuttgart.ipvs_as;
+
+/**
+ * Ways a MapReduce job can be run, as chosen by
+ * {@link MapReduceWSI#runMapReduceWithMode} and
+ * {@link MapReduceWSI#runStreamingMapReduceWithMode} (and the variants
+ * without a mode) depending on the size of the job's input.
+ *
+ * @author acgessler
+ */
+public final class ExecutionMode {
+
+	private ExecutionMode() {
+	}
+
+	/** Regular YARN job with one container per task */
+	public static final String CLUSTER = "CLUSTER";
+
+	/**
+	 * YARN job whose tasks all run inside the ApplicationMaster's container
+	 * ("uber mode"), saving the allocation of further containers
+	 */
+	public static final String UBER = "UBER";
+
+	/**
+	 * Job run in-process on the remote host using Hadoop's local job runner,
+	 * without involving YARN at all
+	 */
+	public static final String LOCAL = "LOCAL";
+}
@@ -0,0 +1,73 @@
+package de.uni_stuttgart.ipvs_as;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Outcome of a single table import that was part of a batch import via
+ * {@link MapReduceWSI#importIntoHDFSBatch}.
+ * 
+ * @author acgessler
+ */
+public class ImportResult {
+
+	private String destinationName;
+	private boolean succeeded;
+	private long durationMillis;
+	private String error;
+
+	public ImportResult() {
+	}
+
+	public ImportResult(String destinationName, boolean succeeded,
+			long durationMillis, String error) {
+		this.destinationName = destinationName;
+		this.succeeded = succeeded;
+		this.durationMillis = durationMillis;
+		this.error = error;
+	}
+
+	public String getDestinationName() {
+		return destinationName;
+	}
+
+	public void setDestinationName(String destinationName) {
+		this.destinationName = destinationName;
+	}
+
+	public boolean isSucceeded() {
+		return succeeded;
+	}
+
+	public void setSucceeded(boolean succeeded) {
+		this.succeeded = succeeded;
+	}
+
+	/** Wall-clock time of the import (with a resolution of one second) */
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	public void setDurationMillis(long durationMillis) {
+		this.durationMillis = durationMillis;
+	}
+
+	/** Error description if the import failed, null otherwise */
+	public String getError() {
+		return error;
+	}
+
+	public void setError(String error) {
+		this.error = error;
+	}
+
+	/** Get a representation suitable for {@link Json#write} */
+	public Map<String, Object> toMap() {
+		final Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("destinationName", destinationName);
+		map.put("succeeded", succeeded);
+		map.put("durationMillis", durationMillis);
+		map.put("error", error);
+		return map;
+	}
+}
@@ -0,0 +1,51 @@
+package de.uni_stuttgart.ipvs_as;
+
+/**
+ * Specification of a single table import as part of a batch import via
+ * {@link MapReduceWSI#importIntoHDFSBatch}.
+ * 
+ * See {@link MapReduceWSI#importIntoHDFS} for the meaning and requirements of
+ * the individual fields.
+ * 
+ * @author acgessler
+ */
+public class ImportSpec {
+
+	private String query;
+	private String partitionColumn;
+	private String destinationName;
+
+	public ImportSpec() {
+	}
+
+	public ImportSpec(String query, String partitionColumn,
+			String destinationName) {
+		this.query = query;
+		this.partitionColumn = partitionColumn;
+		this.destinationName = destinationName;
+	}
+
+	public String getQuery() {
+		return query;
+	}
+
+	public void setQuery(String query) {
+		this.query = query;
+	}
+
+	public String getPartitionColumn() {
+		return partitionColumn;
+	}
+
+	public void setPartitionColumn(String partitionColumn) {
+		this.partitionColumn = partitionColumn;
+	}
+
+	public String getDestinationName() {
+		return destinationName;
+	}
+
+	public void setDestinationName(String destinationName) {
+		this.destinationName = destinationName;
+	}
+}
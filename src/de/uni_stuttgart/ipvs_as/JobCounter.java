@@ -0,0 +1,86 @@
+package de.uni_stuttgart.ipvs_as;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Final value of a single Hadoop counter of a MapReduce job, i.e.
+ * "MAP_OUTPUT_RECORDS" in group
+ * "org.apache.hadoop.mapreduce.TaskCounter". Part of a {@link JobReport}.
+ *
+ * @author acgessler
+ */
+public class JobCounter {
+
+	private String group;
+	private String name;
+	private long mapValue;
+	private long reduceValue;
+	private long totalValue;
+
+	public JobCounter() {
+	}
+
+	public JobCounter(String group, String name, long mapValue,
+			long reduceValue, long totalValue) {
+		this.group = group;
+		this.name = name;
+		this.mapValue = mapValue;
+		this.reduceValue = reduceValue;
+		this.totalValue = totalValue;
+	}
+
+	public String getGroup() {
+		return group;
+	}
+
+	public void setGroup(String group) {
+		this.group = group;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/** Value summed over all map tasks */
+	public long getMapValue() {
+		return mapValue;
+	}
+
+	public void setMapValue(long mapValue) {
+		this.mapValue = mapValue;
+	}
+
+	/** Value summed over all reduce tasks */
+	public long getReduceValue() {
+		return reduceValue;
+	}
+
+	public void setReduceValue(long reduceValue) {
+		this.reduceValue = reduceValue;
+	}
+
+	/** Value for the entire job */
+	public long getTotalValue() {
+		return totalValue;
+	}
+
+	public void setTotalValue(long totalValue) {
+		this.totalValue = totalValue;
+	}
+
+	/** Get a representation suitable for {@link Json#write} */
+	public Map<String, Object> toMap() {
+		final Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("group", group);
+		map.put("name", name);
+		map.put("mapValue", mapValue);
+		map.put("reduceValue", reduceValue);
+		map.put("totalValue", totalValue);
+		return map;
+	}
+}
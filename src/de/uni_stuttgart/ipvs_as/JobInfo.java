@@ -0,0 +1,167 @@
+package de.uni_stuttgart.ipvs_as;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Summary of a single operation run in a scope, as recorded by
+ * {@link JobRegistry} and returned by {@link MapReduceWSI#listJobs}.
+ *
+ * @author acgessler
+ */
+public class JobInfo {
+
+	public static final String STATUS_QUEUED = "QUEUED";
+	public static final String STATUS_RUNNING = "RUNNING";
+	public static final String STATUS_SUCCEEDED = "SUCCEEDED";
+	public static final String STATUS_FAILED = "FAILED";
+
+	/**
+	 * The service stopped while the operation was queued or running, so its
+	 * outcome is unknown.
+	 */
+	public static final String STATUS_INTERRUPTED = "INTERRUPTED";
+
+	private long operationId;
+	private long scopeId;
+	private String operation;
+	private String status;
+	private long submitTime;
+	private long startTime;
+	private long endTime;
+	private String error;
+	private String[] artifacts = new String[0];
+	private String[] jobIds = new String[0];
+
+	public JobInfo() {
+	}
+
+	JobInfo(long operationId, long scopeId, String operation, long submitTime) {
+		this.operationId = operationId;
+		this.scopeId = scopeId;
+		this.operation = operation;
+		this.status = STATUS_QUEUED;
+		this.submitTime = submitTime;
+	}
+
+	JobInfo(JobInfo other) {
+		this.operationId = other.operationId;
+		this.scopeId = other.scopeId;
+		this.operation = other.operation;
+		this.status = other.status;
+		this.submitTime = other.submitTime;
+		this.startTime = other.startTime;
+		this.endTime = other.endTime;
+		this.error = other.error;
+		this.artifacts = other.artifacts.clone();
+		this.jobIds = other.jobIds.clone();
+	}
+
+	public long getOperationId() {
+		return operationId;
+	}
+
+	public void setOperationId(long operationId) {
+		this.operationId = operationId;
+	}
+
+	public long getScopeId() {
+		return scopeId;
+	}
+
+	public void setScopeId(long scopeId) {
+		this.scopeId = scopeId;
+	}
+
+	/** Name of the {@link MapReduceWSI} method, i.e. "runMapReduce" */
+	public String getOperation() {
+		return operation;
+	}
+
+	public void setOperation(String operation) {
+		this.operation = operation;
+	}
+
+	/** One of the STATUS_ constants */
+	public String getStatus() {
+		return status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	/** Time (ms since epoch) the operation was requested */
+	public long getSubmitTime() {
+		return submitTime;
+	}
+
+	public void setSubmitTime(long submitTime) {
+		this.submitTime = submitTime;
+	}
+
+	/** Time (ms since epoch) the operation started running, 0 if it did not */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public void setStartTime(long startTime) {
+		this.startTime = startTime;
+	}
+
+	/** Time (ms since epoch) the operation finished, 0 if it did not */
+	public long getEndTime() {
+		return endTime;
+	}
+
+	public void setEndTime(long endTime) {
+		this.endTime = endTime;
+	}
+
+	/** Error message if the operation failed, null otherwise */
+	public String getError() {
+		return error;
+	}
+
+	public void setError(String error) {
+		this.error = error;
+	}
+
+	/** Absolute HDFS paths written by the operation */
+	public String[] getArtifacts() {
+		return artifacts;
+	}
+
+	public void setArtifacts(String[] artifacts) {
+		this.artifacts = artifacts;
+	}
+
+	/**
+	 * IDs of the MapReduce jobs started by the operation, see
+	 * {@link MapReduceWSI#getJobReport}
+	 */
+	public String[] getJobIds() {
+		return jobIds;
+	}
+
+	public void setJobIds(String[] jobIds) {
+		this.jobIds = jobIds;
+	}
+
+	/** Get a representation suitable for {@link Json#write} */
+	public Map<String, Object> toMap() {
+		final Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("operationId", operationId);
+		map.put("scopeId", scopeId);
+		map.put("operation", operation);
+		map.put("status", status);
+		map.put("submitTime", submitTime);
+		map.put("startTime", startTime);
+		map.put("endTime", endTime);
+		map.put("error", error);
+		map.put("artifacts", Arrays.asList(artifacts));
+		map.put("jobIds", Arrays.asList(jobIds));
+		return map;
+	}
+}
@@ -0,0 +1,484 @@
+package de.uni_stuttgart.ipvs_as;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent local registry of scopes, the operations run in them and the
+ * versions of shared datasets (see {@link DatasetCatalog}) along with the
+ * scopes they are attached to.
+ *
+ * All state is kept in memory, so lookups (i.e. validating a scope ID) never
+ * need to go to the remote host. Every change is appended as one JSON record
+ * per line to a log file and synced to disk before the call returns. On
+ * startup, the log is replayed to rebuild the in-memory state. A torn record
+ * at the end of the log (i.e. after a crash) is ignored.
+ *
+ * Records of deleted scopes are dropped from the log by rewriting it on
+ * startup once they make up the majority of it.
+ *
+ * A single instance is shared by all endpoint instances through the servlet
+ * context (see {@link ConfigStub}).
+ *
+ * @author acgessler
+ */
+public class JobRegistry {
+
+	// Minimum number of records in the log before it is considered for
+	// compaction at all.
+	private static final int MIN_RECORDS_FOR_COMPACTION = 1000;
+
+	private final File logFile;
+	private FileOutputStream log;
+
+	// Insertion-ordered so listings come out in creation order
+	private final Map<Long, Long> scopes = new LinkedHashMap<Long, Long>();
+	private final Map<Long, JobInfo> jobs = new LinkedHashMap<Long, JobInfo>();
+	private long nextOperationId;
+
+	// Shared dataset versions by version number. Each is kept as the record
+	// that published it, plus the IDs of the attached scopes under "scopes".
+	private final Map<Long, Map<String, Object>> datasets = new LinkedHashMap<Long, Map<String, Object>>();
+
+	/**
+	 * Open the registry backed by |logFile|, creating it if needed.
+	 */
+	public JobRegistry(File logFile) throws IOException {
+		this.logFile = logFile;
+		final File parent = logFile.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Failed to create directory " + parent);
+		}
+
+		// Seeded with the current time so IDs are not reused even if the log
+		// gets lost.
+		nextOperationId = System.currentTimeMillis();
+
+		final int recordCount = replay();
+		markUnfinishedJobsInterrupted();
+		if (recordCount >= MIN_RECORDS_FOR_COMPACTION
+				&& recordCount > 2 * (scopes.size() + 2 * jobs.size() + 2 * datasets
+						.size())) {
+			compact();
+		}
+		log = new FileOutputStream(logFile, true);
+		terminateTornRecord();
+	}
+
+	/** Allocate a new, unique operation ID */
+	public synchronized long newOperationId() {
+		return nextOperationId++;
+	}
+
+	/** Check whether |scopeId| refers to an existing scope */
+	public synchronized boolean hasScope(long scopeId) {
+		return scopes.containsKey(scopeId);
+	}
+
+	/** Get the IDs of all existing scopes in order of creation */
+	public synchronized long[] listScopes() {
+		final long[] result = new long[scopes.size()];
+		int i = 0;
+		for (Long scopeId : scopes.keySet()) {
+			result[i++] = scopeId;
+		}
+		return result;
+	}
+
+	/** Record creation of a scope */
+	public synchronized void addScope(long scopeId) throws IOException {
+		final Map<String, Object> record = newRecord("scope");
+		record.put("scopeId", scopeId);
+		record.put("time", System.currentTimeMillis());
+		append(record);
+		apply(record);
+	}
+
+	/** Record deletion of a scope. This also forgets all of its jobs. */
+	public synchronized void removeScope(long scopeId) throws IOException {
+		final Map<String, Object> record = newRecord("scopeDeleted");
+		record.put("scopeId", scopeId);
+		append(record);
+		apply(record);
+	}
+
+	/** Record that an operation has been accepted but did not start yet */
+	public synchronized void jobQueued(long operationId, long scopeId,
+			String operation) throws IOException {
+		final Map<String, Object> record = newRecord("jobQueued");
+		record.put("operationId", operationId);
+		record.put("scopeId", scopeId);
+		record.put("operation", operation);
+		record.put("time", System.currentTimeMillis());
+		append(record);
+		apply(record);
+	}
+
+	/** Record that an operation started running */
+	public synchronized void jobStarted(long operationId, long scopeId,
+			String operation) throws IOException {
+		final Map<String, Object> record = newRecord("jobStarted");
+		record.put("operationId", operationId);
+		record.put("scopeId", scopeId);
+		record.put("operation", operation);
+		record.put("time", System.currentTimeMillis());
+		append(record);
+		apply(record);
+	}
+
+	/**
+	 * Record that an operation finished.
+	 *
+	 * @param error
+	 *            Error message if the operation failed, null otherwise
+	 * @param artifacts
+	 *            Absolute HDFS paths written by the operation
+	 * @param jobIds
+	 *            IDs of the MapReduce jobs started by the operation
+	 */
+	public synchronized void jobFinished(long operationId, String error,
+			String[] artifacts, String[] jobIds) throws IOException {
+		final Map<String, Object> record = newRecord("jobFinished");
+		record.put("operationId", operationId);
+		record.put("time", System.currentTimeMillis());
+		record.put("status", error == null ? JobInfo.STATUS_SUCCEEDED
+				: JobInfo.STATUS_FAILED);
+		record.put("error", error);
+		record.put("artifacts", Arrays.asList(artifacts));
+		record.put("jobIds", Arrays.asList(jobIds));
+		append(record);
+		apply(record);
+	}
+
+	/** Record that a new version of a shared dataset has been imported */
+	public synchronized void datasetPublished(String name, long version,
+			String hdfsPath, String fingerprint) throws IOException {
+		final Map<String, Object> record = newRecord("datasetPublished");
+		record.put("name", name);
+		record.put("version", version);
+		record.put("hdfsPath", hdfsPath);
+		record.put("fingerprint", fingerprint);
+		record.put("time", System.currentTimeMillis());
+		append(record);
+		apply(record);
+	}
+
+	/**
+	 * Record that a shared dataset version was found to still match its
+	 * source at |time|
+	 */
+	public synchronized void datasetValidated(long version, long time)
+			throws IOException {
+		final Map<String, Object> record = newRecord("datasetValidated");
+		record.put("version", version);
+		record.put("time", time);
+		append(record);
+		apply(record);
+	}
+
+	/** Record that a shared dataset version has been attached to a scope */
+	public synchronized void datasetAttached(long scopeId, long version)
+			throws IOException {
+		final Map<String, Object> record = newRecord("datasetAttached");
+		record.put("scopeId", scopeId);
+		record.put("version", version);
+		append(record);
+		apply(record);
+	}
+
+	/** Record that a shared dataset version has been detached from a scope */
+	public synchronized void datasetDetached(long scopeId, long version)
+			throws IOException {
+		final Map<String, Object> record = newRecord("datasetDetached");
+		record.put("scopeId", scopeId);
+		record.put("version", version);
+		append(record);
+		apply(record);
+	}
+
+	/** Record that a shared dataset version is no longer used and deleted */
+	public synchronized void datasetDropped(long version) throws IOException {
+		final Map<String, Object> record = newRecord("datasetDropped");
+		record.put("version", version);
+		append(record);
+		apply(record);
+	}
+
+	/**
+	 * Get all shared dataset versions that have not been dropped, in order of
+	 * version. Each is a map with the entries "name", "version", "hdfsPath",
+	 * "fingerprint", "time" (of import), "validatedAt" (if validated since)
+	 * and "scopes" (IDs of the attached scopes).
+	 */
+	public synchronized List<Map<String, Object>> listDatasets() {
+		final List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+		for (Map<String, Object> dataset : datasets.values()) {
+			final Map<String, Object> copy = new LinkedHashMap<String, Object>(
+					dataset);
+			copy.put("scopes", new ArrayList<Long>(getScopes(dataset)));
+			result.add(copy);
+		}
+		return result;
+	}
+
+	/** Get a job by operation ID or null if there is no such job */
+	public synchronized JobInfo getJob(long operationId) {
+		final JobInfo job = jobs.get(operationId);
+		return job == null ? null : new JobInfo(job);
+	}
+
+	/** Get all jobs of a scope in order of submission */
+	public synchronized JobInfo[] listJobs(long scopeId) {
+		final List<JobInfo> result = new ArrayList<JobInfo>();
+		for (JobInfo job : jobs.values()) {
+			if (job.getScopeId() == scopeId) {
+				result.add(new JobInfo(job));
+			}
+		}
+		return result.toArray(new JobInfo[result.size()]);
+	}
+
+	public synchronized void close() {
+		try {
+			log.close();
+		} catch (IOException e) {
+			// Everything has been synced already
+		}
+	}
+
+	private static Map<String, Object> newRecord(String type) {
+		final Map<String, Object> record = new LinkedHashMap<String, Object>();
+		record.put("type", type);
+		return record;
+	}
+
+	// Apply a single record to the in-memory state
+	private void apply(Map<String, Object> record) {
+		final String type = (String) record.get("type");
+		if (type.equals("scope")) {
+			scopes.put(getLong(record, "scopeId"), getLong(record, "time"));
+		} else if (type.equals("scopeDeleted")) {
+			final long scopeId = getLong(record, "scopeId");
+			scopes.remove(scopeId);
+			final List<Long> obsolete = new ArrayList<Long>();
+			for (JobInfo job : jobs.values()) {
+				if (job.getScopeId() == scopeId) {
+					obsolete.add(job.getOperationId());
+				}
+			}
+			jobs.keySet().removeAll(obsolete);
+			for (Map<String, Object> dataset : datasets.values()) {
+				getScopes(dataset).remove(scopeId);
+			}
+		} else if (type.equals("datasetPublished")) {
+			final Map<String, Object> dataset = new LinkedHashMap<String, Object>(
+					record);
+			dataset.remove("type");
+			dataset.put("scopes", new ArrayList<Long>());
+			datasets.put(getLong(record, "version"), dataset);
+		} else if (type.equals("datasetAttached")
+				|| type.equals("datasetDetached")) {
+			final Map<String, Object> dataset = datasets.get(getLong(record,
+					"version"));
+			if (dataset == null) {
+				return;
+			}
+			final List<Long> scopeIds = getScopes(dataset);
+			final Long scopeId = getLong(record, "scopeId");
+			scopeIds.remove(scopeId);
+			if (type.equals("datasetAttached")) {
+				scopeIds.add(scopeId);
+			}
+		} else if (type.equals("datasetValidated")) {
+			final Map<String, Object> dataset = datasets.get(getLong(record,
+					"version"));
+			if (dataset != null) {
+				dataset.put("validatedAt", getLong(record, "time"));
+			}
+		} else if (type.equals("datasetDropped")) {
+			datasets.remove(getLong(record, "version"));
+		} else if (type.equals("jobQueued") || type.equals("jobStarted")) {
+			final long operationId = getLong(record, "operationId");
+			JobInfo job = jobs.get(operationId);
+			if (job == null) {
+				job = new JobInfo(operationId, getLong(record, "scopeId"),
+						(String) record.get("operation"), getLong(record,
+								"time"));
+				jobs.put(operationId, job);
+			}
+			if (type.equals("jobStarted")) {
+				job.setStatus(JobInfo.STATUS_RUNNING);
+				job.setStartTime(getLong(record, "time"));
+			}
+			nextOperationId = Math.max(nextOperationId, operationId + 1);
+		} else if (type.equals("jobFinished")) {
+			final JobInfo job = jobs.get(getLong(record, "operationId"));
+			if (job == null) {
+				return;
+			}
+			job.setStatus((String) record.get("status"));
+			job.setEndTime(getLong(record, "time"));
+			job.setError((String) record.get("error"));
+			job.setArtifacts(getStringArray(record, "artifacts"));
+			job.setJobIds(getStringArray(record, "jobIds"));
+		} else if (type.equals("job")) {
+			// Snapshot of a job as written by compact()
+			final JobInfo job = new JobInfo(getLong(record, "operationId"),
+					getLong(record, "scopeId"),
+					(String) record.get("operation"), getLong(record,
+							"submitTime"));
+			job.setStatus((String) record.get("status"));
+			job.setStartTime(getLong(record, "startTime"));
+			job.setEndTime(getLong(record, "endTime"));
+			job.setError((String) record.get("error"));
+			job.setArtifacts(getStringArray(record, "artifacts"));
+			job.setJobIds(getStringArray(record, "jobIds"));
+			jobs.put(job.getOperationId(), job);
+			nextOperationId = Math.max(nextOperationId,
+					job.getOperationId() + 1);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Long> getScopes(Map<String, Object> dataset) {
+		return (List<Long>) dataset.get("scopes");
+	}
+
+	private static long getLong(Map<String, Object> record, String key) {
+		return ((Number) record.get(key)).longValue();
+	}
+
+	private static String[] getStringArray(Map<String, Object> record,
+			String key) {
+		final List<?> list = (List<?>) record.get(key);
+		if (list == null) {
+			return new String[0];
+		}
+		return list.toArray(new String[list.size()]);
+	}
+
+	// Append |record| to the log and sync it to disk
+	private void append(Map<String, Object> record) throws IOException {
+		final StringWriter writer = new StringWriter();
+		Json.write(writer, record);
+		writer.write('\n');
+		log.write(writer.toString().getBytes("UTF-8"));
+		log.flush();
+		log.getFD().sync();
+	}
+
+	// Replay the log, returns the number of records read
+	private int replay() throws IOException {
+		if (!logFile.exists()) {
+			return 0;
+		}
+		int recordCount = 0;
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(logFile), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.trim().length() == 0) {
+					continue;
+				}
+				final Object record;
+				try {
+					record = Json.read(new StringReader(line));
+				} catch (IllegalArgumentException e) {
+					// Torn write from a crash, the operation it recorded
+					// never returned to the client.
+					continue;
+				}
+				if (!(record instanceof Map)) {
+					continue;
+				}
+				@SuppressWarnings("unchecked")
+				final Map<String, Object> map = (Map<String, Object>) record;
+				apply(map);
+				++recordCount;
+			}
+		} finally {
+			reader.close();
+		}
+		return recordCount;
+	}
+
+	// If the log ends in a torn record, terminate it so that the next record
+	// starts on a line of its own.
+	private void terminateTornRecord() throws IOException {
+		final RandomAccessFile file = new RandomAccessFile(logFile, "r");
+		try {
+			if (file.length() == 0) {
+				return;
+			}
+			file.seek(file.length() - 1);
+			if (file.read() == '\n') {
+				return;
+			}
+		} finally {
+			file.close();
+		}
+		log.write('\n');
+		log.flush();
+		log.getFD().sync();
+	}
+
+	private void markUnfinishedJobsInterrupted() {
+		for (JobInfo job : jobs.values()) {
+			if (job.getStatus().equals(JobInfo.STATUS_QUEUED)
+					|| job.getStatus().equals(JobInfo.STATUS_RUNNING)) {
+				job.setStatus(JobInfo.STATUS_INTERRUPTED);
+			}
+		}
+	}
+
+	// Rewrite the log to contain only a snapshot of the current state. The
+	// new log is written to a temporary file first, which then atomically
+	// replaces the old one.
+	private void compact() throws IOException {
+		final File tempFile = new File(logFile.getPath() + ".tmp");
+		log = new FileOutputStream(tempFile, false);
+		try {
+			for (Map.Entry<Long, Long> scope : scopes.entrySet()) {
+				final Map<String, Object> record = newRecord("scope");
+				record.put("scopeId", scope.getKey());
+				record.put("time", scope.getValue());
+				append(record);
+			}
+			for (JobInfo job : jobs.values()) {
+				final Map<String, Object> record = job.toMap();
+				record.put("type", "job");
+				append(record);
+			}
+			for (Map<String, Object> dataset : datasets.values()) {
+				final Map<String, Object> record = newRecord("datasetPublished");
+				record.putAll(dataset);
+				record.remove("scopes");
+				append(record);
+				for (Long scopeId : getScopes(dataset)) {
+					final Map<String, Object> attached = newRecord("datasetAttached");
+					attached.put("scopeId", scopeId);
+					attached.put("version", dataset.get("version"));
+					append(attached);
+				}
+			}
+		} finally {
+			log.close();
+		}
+		if (!tempFile.renameTo(logFile)) {
+			throw new IOException("Failed to replace " + logFile);
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package de.uni_stuttgart.ipvs_as;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Performance report of a single MapReduce job started by an operation: final
+ * counters and task timings, as returned by {@link MapReduceWSI#getJobReport}.
+ *
+ * @author acgessler
+ */
+public class JobReport {
+
+	private String jobId;
+	private String applicationId;
+	private String name;
+	private String state;
+	private boolean uberized;
+	private long startTime;
+	private long finishTime;
+	private String diagnostics;
+	private JobCounter[] counters = new JobCounter[0];
+	private TaskSummary mapTasks = new TaskSummary();
+	private TaskSummary reduceTasks = new TaskSummary();
+
+	public JobReport() {
+	}
+
+	/**
+	 * Build a report from the responses of the MapReduce JobHistory Server
+	 * REST API for a job, its counters and its tasks.
+	 *
+	 * @see <a
+	 *      href="http://hadoop.apache.org/docs/r2.7.1/hadoop-mapreduce-client/hadoop-mapreduce-client-hs/HistoryServerRest.html">
+	 *      JobHistory Server REST API (external)</a>
+	 */
+	static JobReport fromHistory(Map<?, ?> jobResponse,
+			Map<?, ?> countersResponse, Map<?, ?> tasksResponse) {
+		final JobReport report = new JobReport();
+		final Map<?, ?> job = getMap(jobResponse, "job");
+		report.jobId = (String) job.get("id");
+		report.applicationId = report.jobId.replaceFirst("^job_",
+				"application_");
+		report.name = (String) job.get("name");
+		report.state = (String) job.get("state");
+		report.uberized = Boolean.TRUE.equals(job.get("uberized"));
+		report.startTime = getLong(job, "startTime");
+		report.finishTime = getLong(job, "finishTime");
+		report.diagnostics = (String) job.get("diagnostics");
+
+		final List<JobCounter> counters = new ArrayList<JobCounter>();
+		for (Object group : getList(getMap(countersResponse, "jobCounters"),
+				"counterGroup")) {
+			final String groupName = (String) ((Map<?, ?>) group)
+					.get("counterGroupName");
+			for (Object counter : getList((Map<?, ?>) group, "counter")) {
+				final Map<?, ?> values = (Map<?, ?>) counter;
+				counters.add(new JobCounter(groupName, (String) values
+						.get("name"), getLong(values, "mapCounterValue"),
+						getLong(values, "reduceCounterValue"), getLong(values,
+								"totalCounterValue")));
+			}
+		}
+		report.counters = counters.toArray(new JobCounter[counters.size()]);
+
+		for (Object task : getList(getMap(tasksResponse, "tasks"), "task")) {
+			final Map<?, ?> values = (Map<?, ?>) task;
+			final TaskSummary summary = "MAP".equals(values.get("type")) ? report.mapTasks
+					: report.reduceTasks;
+			summary.addTask("SUCCEEDED".equals(values.get("state")),
+					getLong(values, "elapsedTime"));
+		}
+		return report;
+	}
+
+	// Accessors for JSON documents as produced by Json.read(). Missing values
+	// are treated as empty.
+	private static Map<?, ?> getMap(Map<?, ?> map, String key) {
+		final Object value = map == null ? null : map.get(key);
+		return value instanceof Map ? (Map<?, ?>) value
+				: new LinkedHashMap<Object, Object>();
+	}
+
+	private static List<?> getList(Map<?, ?> map, String key) {
+		final Object value = map.get(key);
+		return value instanceof List ? (List<?>) value : new ArrayList<Object>();
+	}
+
+	private static long getLong(Map<?, ?> map, String key) {
+		final Object value = map.get(key);
+		return value instanceof Number ? ((Number) value).longValue() : 0;
+	}
+
+	/** MapReduce job ID, i.e. "job_1433325133337_0042" */
+	public String getJobId() {
+		return jobId;
+	}
+
+	public void setJobId(String jobId) {
+		this.jobId = jobId;
+	}
+
+	/** ID of the YARN application that ran the job */
+	public String getApplicationId() {
+		return applicationId;
+	}
+
+	public void setApplicationId(String applicationId) {
+		this.applicationId = applicationId;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/** Final state of the job, i.e. "SUCCEEDED", "FAILED" or "KILLED" */
+	public String getState() {
+		return state;
+	}
+
+	public void setState(String state) {
+		this.state = state;
+	}
+
+	/** Whether the job ran in uber mode, i.e. in the ApplicationMaster */
+	public boolean isUberized() {
+		return uberized;
+	}
+
+	public void setUberized(boolean uberized) {
+		this.uberized = uberized;
+	}
+
+	/** Time (ms since epoch) the job started */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public void setStartTime(long startTime) {
+		this.startTime = startTime;
+	}
+
+	/** Time (ms since epoch) the job finished */
+	public long getFinishTime() {
+		return finishTime;
+	}
+
+	public void setFinishTime(long finishTime) {
+		this.finishTime = finishTime;
+	}
+
+	/** Diagnostic messages of the job, typically set if it failed */
+	public String getDiagnostics() {
+		return diagnostics;
+	}
+
+	public void setDiagnostics(String diagnostics) {
+		this.diagnostics = diagnostics;
+	}
+
+	/** Final values of all counters of the job */
+	public JobCounter[] getCounters() {
+		return counters;
+	}
+
+	public void setCounters(JobCounter[] counters) {
+		this.counters = counters;
+	}
+
+	public TaskSummary getMapTasks() {
+		return mapTasks;
+	}
+
+	public void setMapTasks(TaskSummary mapTasks) {
+		this.mapTasks = mapTasks;
+	}
+
+	public TaskSummary getReduceTasks() {
+		return reduceTasks;
+	}
+
+	public void setReduceTasks(TaskSummary reduceTasks) {
+		this.reduceTasks = reduceTasks;
+	}
+
+	/** Get a representation suitable for {@link Json#write} */
+	public Map<String, Object> toMap() {
+		final Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("jobId", jobId);
+		map.put("applicationId", applicationId);
+		map.put("name", name);
+		map.put("state", state);
+		map.put("uberized", uberized);
+		map.put("startTime", startTime);
+		map.put("finishTime", finishTime);
+		map.put("diagnostics", diagnostics);
+		final List<Object> counterMaps = new ArrayList<Object>();
+		for (JobCounter counter : counters) {
+			counterMaps.add(counter.toMap());
+		}
+		map.put("counters", counterMaps);
+		map.put("mapTasks", mapTasks.toMap());
+		map.put("reduceTasks", reduceTasks.toMap());
+		return map;
+	}
+}
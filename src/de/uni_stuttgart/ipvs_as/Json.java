@@ -0,0 +1,318 @@
+package de.uni_stuttgart.ipvs_as;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal streaming JSON reader and writer used by the JSON/HTTP binding.
+ *
+ * This intentionally supports only what the binding needs: objects become
+ * {@link Map}s, arrays {@link List}s, numbers {@link Long} or {@link Double},
+ * and strings, booleans and null their obvious Java counterparts. Pulling in a
+ * full-blown JSON library (and shipping it with the WAR) is not worth it for
+ * this.
+ *
+ * @author acgessler
+ */
+public final class Json {
+
+	private Json() {
+	}
+
+	/**
+	 * Parse a single JSON value from |reader|. Characters are consumed one by
+	 * one, so there is no need to buffer the entire document.
+	 *
+	 * @throws IllegalArgumentException
+	 *             If the input is not well-formed JSON.
+	 */
+	public static Object read(Reader reader) throws IOException {
+		final Parser parser = new Parser(reader);
+		final Object value = parser.readValue();
+		if (parser.skipWhitespace() != -1) {
+			throw new IllegalArgumentException("Trailing characters after JSON");
+		}
+		return value;
+	}
+
+	/**
+	 * Write |value| as JSON to |writer|. Supported are maps (with string
+	 * keys), lists, arrays of objects, strings, numbers, booleans and null.
+	 * NaN and infinite numbers have no JSON representation and are written as
+	 * null.
+	 */
+	public static void write(Writer writer, Object value) throws IOException {
+		if (value == null || isNonFinite(value)) {
+			writer.write("null");
+		} else if (value instanceof String) {
+			writeString(writer, (String) value);
+		} else if (value instanceof Number || value instanceof Boolean) {
+			writer.write(value.toString());
+		} else if (value instanceof Map) {
+			writer.write('{');
+			boolean first = true;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				if (!first) {
+					writer.write(',');
+				}
+				first = false;
+				writeString(writer, entry.getKey().toString());
+				writer.write(':');
+				write(writer, entry.getValue());
+			}
+			writer.write('}');
+		} else if (value instanceof List || value instanceof Object[]) {
+			final List<?> list = value instanceof List ? (List<?>) value
+					: java.util.Arrays.asList((Object[]) value);
+			writer.write('[');
+			boolean first = true;
+			for (Object element : list) {
+				if (!first) {
+					writer.write(',');
+				}
+				first = false;
+				write(writer, element);
+			}
+			writer.write(']');
+		} else {
+			throw new IllegalArgumentException("Cannot serialize "
+					+ value.getClass().getName() + " to JSON");
+		}
+	}
+
+	private static boolean isNonFinite(Object value) {
+		if (value instanceof Double) {
+			final double d = (Double) value;
+			return Double.isNaN(d) || Double.isInfinite(d);
+		}
+		if (value instanceof Float) {
+			final float f = (Float) value;
+			return Float.isNaN(f) || Float.isInfinite(f);
+		}
+		return false;
+	}
+
+	private static void writeString(Writer writer, String s)
+			throws IOException {
+		writer.write('"');
+		for (int i = 0; i < s.length(); ++i) {
+			final char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				writer.write("\\\"");
+				break;
+			case '\\':
+				writer.write("\\\\");
+				break;
+			case '\n':
+				writer.write("\\n");
+				break;
+			case '\r':
+				writer.write("\\r");
+				break;
+			case '\t':
+				writer.write("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					writer.write(String.format("\\u%04x", (int) c));
+				} else {
+					writer.write(c);
+				}
+			}
+		}
+		writer.write('"');
+	}
+
+	private static class Parser {
+		private final Reader reader;
+		// One character of look-ahead, -2 if not yet read
+		private int peeked = -2;
+
+		Parser(Reader reader) {
+			this.reader = reader;
+		}
+
+		private int peek() throws IOException {
+			if (peeked == -2) {
+				peeked = reader.read();
+			}
+			return peeked;
+		}
+
+		private int next() throws IOException {
+			final int c = peek();
+			peeked = -2;
+			return c;
+		}
+
+		int skipWhitespace() throws IOException {
+			int c = peek();
+			while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+				next();
+				c = peek();
+			}
+			return c;
+		}
+
+		private void expect(char expected) throws IOException {
+			final int c = next();
+			if (c != expected) {
+				throw new IllegalArgumentException(String.format(
+						"Malformed JSON: expected '%s'", expected));
+			}
+		}
+
+		private void expectLiteral(String literal) throws IOException {
+			for (int i = 0; i < literal.length(); ++i) {
+				expect(literal.charAt(i));
+			}
+		}
+
+		Object readValue() throws IOException {
+			final int c = skipWhitespace();
+			switch (c) {
+			case '{':
+				return readObject();
+			case '[':
+				return readArray();
+			case '"':
+				return readString();
+			case 't':
+				expectLiteral("true");
+				return Boolean.TRUE;
+			case 'f':
+				expectLiteral("false");
+				return Boolean.FALSE;
+			case 'n':
+				expectLiteral("null");
+				return null;
+			case -1:
+				throw new IllegalArgumentException(
+						"Malformed JSON: unexpected end of input");
+			default:
+				return readNumber();
+			}
+		}
+
+		private Map<String, Object> readObject() throws IOException {
+			final Map<String, Object> map = new LinkedHashMap<String, Object>();
+			expect('{');
+			if (skipWhitespace() == '}') {
+				next();
+				return map;
+			}
+			while (true) {
+				skipWhitespace();
+				final String key = readString();
+				skipWhitespace();
+				expect(':');
+				map.put(key, readValue());
+				if (skipWhitespace() == ',') {
+					next();
+					continue;
+				}
+				expect('}');
+				return map;
+			}
+		}
+
+		private List<Object> readArray() throws IOException {
+			final List<Object> list = new ArrayList<Object>();
+			expect('[');
+			if (skipWhitespace() == ']') {
+				next();
+				return list;
+			}
+			while (true) {
+				list.add(readValue());
+				if (skipWhitespace() == ',') {
+					next();
+					continue;
+				}
+				expect(']');
+				return list;
+			}
+		}
+
+		private String readString() throws IOException {
+			expect('"');
+			final StringBuilder sb = new StringBuilder();
+			while (true) {
+				final int c = next();
+				switch (c) {
+				case -1:
+					throw new IllegalArgumentException(
+							"Malformed JSON: unterminated string");
+				case '"':
+					return sb.toString();
+				case '\\':
+					final int escaped = next();
+					switch (escaped) {
+					case 'n':
+						sb.append('\n');
+						break;
+					case 'r':
+						sb.append('\r');
+						break;
+					case 't':
+						sb.append('\t');
+						break;
+					case 'b':
+						sb.append('\b');
+						break;
+					case 'f':
+						sb.append('\f');
+						break;
+					case 'u':
+						final char[] hex = new char[4];
+						for (int i = 0; i < 4; ++i) {
+							hex[i] = (char) next();
+						}
+						try {
+							sb.append((char) Integer.parseInt(new String(hex),
+									16));
+						} catch (NumberFormatException e) {
+							throw new IllegalArgumentException(
+									"Malformed JSON: invalid unicode escape");
+						}
+						break;
+					case -1:
+						throw new IllegalArgumentException(
+								"Malformed JSON: unterminated string");
+					default:
+						// Covers \" \\ and \/
+						sb.append((char) escaped);
+					}
+					break;
+				default:
+					sb.append((char) c);
+				}
+			}
+		}
+
+		private Number readNumber() throws IOException {
+			final StringBuilder sb = new StringBuilder();
+			int c = peek();
+			while (c != -1 && "+-0123456789.eE".indexOf(c) != -1) {
+				sb.append((char) next());
+				c = peek();
+			}
+			final String s = sb.toString();
+			try {
+				if (s.indexOf('.') != -1 || s.indexOf('e') != -1
+						|| s.indexOf('E') != -1) {
+					return Double.valueOf(s);
+				}
+				return Long.valueOf(s);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Malformed JSON: bad value");
+			}
+		}
+	}
+}
@@ -0,0 +1,382 @@
+package de.uni_stuttgart.ipvs_as;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Compact JSON-over-HTTP binding for {@link MapReduceWSI}, intended for
+ * clients that issue many cheap calls and do not want to pay for SOAP
+ * envelopes and WSDL processing.
+ *
+ * Every {@link MapReduceWSI} operation is available as
+ *
+ * <pre>
+ * POST /json/&lt;operationName&gt;
+ * </pre>
+ *
+ * with a JSON object holding the named arguments as request body, i.e.
+ *
+ * <pre>
+ * POST /json/deleteScope
+ * {"scopeId": 1234}
+ * </pre>
+ *
+ * On success, the response is a JSON object with the return value (if any)
+ * in its "result" member. Failures are reported as a JSON object with an
+ * "error" member and HTTP status 400 (bad arguments) or 500 (operation failed).
+ *
+ * Request and response bodies are parsed and written on the fly. All calls are
+ * forwarded to {@link MapReduceWSIImpl}, so both bindings behave identically.
+ *
+ * @author acgessler
+ */
+public class MapReduceJSONServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 4188652390750114876L;
+
+	private static final String ENCODING = "UTF-8";
+
+	@Override
+	protected void doPost(HttpServletRequest request,
+			HttpServletResponse response) throws ServletException, IOException {
+		final String pathInfo = request.getPathInfo();
+		if (pathInfo == null || pathInfo.length() <= 1) {
+			writeError(response, HttpServletResponse.SC_NOT_FOUND,
+					"No operation given");
+			return;
+		}
+		final String operation = pathInfo.substring(1);
+
+		Object result;
+		try {
+			final Object body = Json.read(new BufferedReader(
+					new InputStreamReader(request.getInputStream(), ENCODING)));
+			if (!(body instanceof Map)) {
+				throw new IllegalArgumentException(
+						"Request body must be a JSON object");
+			}
+			@SuppressWarnings("unchecked")
+			final Map<String, Object> arguments = (Map<String, Object>) body;
+			result = dispatch(new MapReduceWSIImpl(getServletContext()),
+					operation, arguments);
+		} catch (UnknownOperationException e) {
+			writeError(response, HttpServletResponse.SC_NOT_FOUND,
+					e.getMessage());
+			return;
+		} catch (IllegalArgumentException e) {
+			writeError(response, HttpServletResponse.SC_BAD_REQUEST,
+					e.getMessage());
+			return;
+		} catch (MapReduceWSIException e) {
+			writeError(response,
+					HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+					e.getMessage());
+			return;
+		}
+
+		final Map<String, Object> envelope = new LinkedHashMap<String, Object>();
+		if (result != null) {
+			envelope.put("result", result);
+		}
+		writeJson(response, HttpServletResponse.SC_OK, envelope);
+	}
+
+	// Invoke |operation| on |wsi|, taking arguments from |arguments|. Returns
+	// the operation's return value or null for void operations.
+	private Object dispatch(MapReduceWSI wsi, String operation,
+			Map<String, Object> arguments) throws MapReduceWSIException,
+			UnknownOperationException {
+		if (operation.equals("createScope")) {
+			return wsi.createScope();
+		} else if (operation.equals("deleteScope")) {
+			wsi.deleteScope(getLong(arguments, "scopeId"));
+			return null;
+		} else if (operation.equals("runMapReduce")) {
+			wsi.runMapReduce(getLong(arguments, "scopeId"),
+					getString(arguments, "srcJarName"),
+					getStringArray(arguments, "arguments"));
+			return null;
+		} else if (operation.equals("runMapReduceWithMode")) {
+			return wsi.runMapReduceWithMode(getLong(arguments, "scopeId"),
+					getString(arguments, "srcJarName"),
+					getStringArray(arguments, "arguments"),
+					getOptionalBoolean(arguments, "forceCluster"));
+		} else if (operation.equals("runStreamingMapReduce")) {
+			wsi.runStreamingMapReduce(getLong(arguments, "scopeId"),
+					getString(arguments, "mapperScript"),
+					getString(arguments, "reducerScript"),
+					getString(arguments, "input"),
+					getString(arguments, "output"));
+			return null;
+		} else if (operation.equals("runStreamingMapReduceWithMode")) {
+			return wsi.runStreamingMapReduceWithMode(
+					getLong(arguments, "scopeId"),
+					getString(arguments, "mapperScript"),
+					getString(arguments, "reducerScript"),
+					getString(arguments, "input"),
+					getString(arguments, "output"),
+					getOptionalBoolean(arguments, "forceCluster"));
+		} else if (operation.equals("dryRunStreaming")) {
+			return wsi.dryRunStreaming(getLong(arguments, "scopeId"),
+					getString(arguments, "mapperScript"),
+					getString(arguments, "reducerScript"),
+					getString(arguments, "input"),
+					getLong(arguments, "sampleBytes")).toMap();
+		} else if (operation.equals("importIntoHDFS")) {
+			wsi.importIntoHDFS(getLong(arguments, "scopeId"),
+					getString(arguments, "jdbcURI"),
+					getString(arguments, "dbUser"),
+					getString(arguments, "dbCredentials"),
+					getString(arguments, "query"),
+					getString(arguments, "partitionColumn"),
+					getString(arguments, "destinationName"));
+			return null;
+		} else if (operation.equals("exportToRDBMS")) {
+			wsi.exportToRDBMS(getLong(arguments, "scopeId"),
+					getString(arguments, "jdbcURI"),
+					getString(arguments, "dbUser"),
+					getString(arguments, "dbCredentials"),
+					getString(arguments, "tableName"),
+					getString(arguments, "sourceName"));
+			return null;
+		} else if (operation.equals("importSharedDataset")) {
+			return wsi.importSharedDataset(getString(arguments, "datasetName"),
+					getString(arguments, "jdbcURI"),
+					getString(arguments, "dbUser"),
+					getString(arguments, "dbCredentials"),
+					getString(arguments, "query"),
+					getString(arguments, "partitionColumn"),
+					getLong(arguments, "maxAgeSeconds"));
+		} else if (operation.equals("attachSharedDataset")) {
+			return wsi.attachSharedDataset(getLong(arguments, "scopeId"),
+					getString(arguments, "datasetName"));
+		} else if (operation.equals("detachSharedDataset")) {
+			wsi.detachSharedDataset(getLong(arguments, "scopeId"),
+					getString(arguments, "datasetName"));
+			return null;
+		} else if (operation.equals("runMapReduceAsync")) {
+			return wsi.runMapReduceAsync(getLong(arguments, "scopeId"),
+					getString(arguments, "srcJarName"),
+					getStringArray(arguments, "arguments"),
+					getOptionalString(arguments, "callbackURL"));
+		} else if (operation.equals("runMapReduceWithModeAsync")) {
+			return wsi.runMapReduceWithModeAsync(
+					getLong(arguments, "scopeId"),
+					getString(arguments, "srcJarName"),
+					getStringArray(arguments, "arguments"),
+					getOptionalBoolean(arguments, "forceCluster"),
+					getOptionalString(arguments, "callbackURL"));
+		} else if (operation.equals("runStreamingMapReduceAsync")) {
+			return wsi.runStreamingMapReduceAsync(
+					getLong(arguments, "scopeId"),
+					getString(arguments, "mapperScript"),
+					getString(arguments, "reducerScript"),
+					getString(arguments, "input"),
+					getString(arguments, "output"),
+					getOptionalString(arguments, "callbackURL"));
+		} else if (operation.equals("runStreamingMapReduceWithModeAsync")) {
+			return wsi.runStreamingMapReduceWithModeAsync(
+					getLong(arguments, "scopeId"),
+					getString(arguments, "mapperScript"),
+					getString(arguments, "reducerScript"),
+					getString(arguments, "input"),
+					getString(arguments, "output"),
+					getOptionalBoolean(arguments, "forceCluster"),
+					getOptionalString(arguments, "callbackURL"));
+		} else if (operation.equals("importIntoHDFSAsync")) {
+			return wsi.importIntoHDFSAsync(getLong(arguments, "scopeId"),
+					getString(arguments, "jdbcURI"),
+					getString(arguments, "dbUser"),
+					getString(arguments, "dbCredentials"),
+					getString(arguments, "query"),
+					getString(arguments, "partitionColumn"),
+					getString(arguments, "destinationName"),
+					getOptionalString(arguments, "callbackURL"));
+		} else if (operation.equals("importIntoHDFSBatch")) {
+			final ImportResult[] results = wsi.importIntoHDFSBatch(
+					getLong(arguments, "scopeId"),
+					getString(arguments, "jdbcURI"),
+					getString(arguments, "dbUser"),
+					getString(arguments, "dbCredentials"),
+					getImportSpecs(arguments, "imports"),
+					(int) getLong(arguments, "parallelism"));
+			final List<Object> list = new ArrayList<Object>();
+			for (ImportResult result : results) {
+				list.add(result.toMap());
+			}
+			return list;
+		} else if (operation.equals("listScopes")) {
+			final List<Object> list = new ArrayList<Object>();
+			for (long scopeId : wsi.listScopes()) {
+				list.add(scopeId);
+			}
+			return list;
+		} else if (operation.equals("listJobs")) {
+			final List<Object> list = new ArrayList<Object>();
+			for (JobInfo job : wsi.listJobs(getLong(arguments, "scopeId"))) {
+				list.add(job.toMap());
+			}
+			return list;
+		} else if (operation.equals("getJobReport")) {
+			final List<Object> list = new ArrayList<Object>();
+			for (JobReport report : wsi.getJobReport(getLong(arguments,
+					"operationId"))) {
+				list.add(report.toMap());
+			}
+			return list;
+		} else if (operation.equals("compact")) {
+			return wsi.compact(getLong(arguments, "scopeId"),
+					getString(arguments, "name"),
+					getLong(arguments, "targetFileSize"),
+					getOptionalBoolean(arguments, "compress")).toMap();
+		} else if (operation.equals("getTrace")) {
+			return wsi.getTrace(getLong(arguments, "operationId")).toMap();
+		} else if (operation.equals("listTraces")) {
+			final List<Object> list = new ArrayList<Object>();
+			for (Trace trace : wsi.listTraces((int) getLong(arguments,
+					"maxCount"))) {
+				list.add(trace.toMap());
+			}
+			return list;
+		} else if (operation.equals("putIntoHDFS")) {
+			wsi.putIntoHDFS(getLong(arguments, "scopeId"),
+					getString(arguments, "srcFileName"),
+					getString(arguments, "destinationName"));
+			return null;
+		}
+		throw new UnknownOperationException(operation);
+	}
+
+	private static Object getRequired(Map<String, Object> arguments,
+			String name) {
+		if (!arguments.containsKey(name)) {
+			throw new IllegalArgumentException("Missing argument |" + name
+					+ "|");
+		}
+		return arguments.get(name);
+	}
+
+	private static long getLong(Map<String, Object> arguments, String name) {
+		final Object value = getRequired(arguments, name);
+		if (!(value instanceof Long)) {
+			throw new IllegalArgumentException("Argument |" + name
+					+ "| must be an integer");
+		}
+		return (Long) value;
+	}
+
+	private static String getString(Map<String, Object> arguments, String name) {
+		final Object value = getRequired(arguments, name);
+		if (!(value instanceof String)) {
+			throw new IllegalArgumentException("Argument |" + name
+					+ "| must be a string");
+		}
+		return (String) value;
+	}
+
+	private static String getOptionalString(Map<String, Object> arguments,
+			String name) {
+		if (arguments.get(name) == null) {
+			return null;
+		}
+		return getString(arguments, name);
+	}
+
+	// Missing boolean arguments are taken to be false
+	private static boolean getOptionalBoolean(Map<String, Object> arguments,
+			String name) {
+		final Object value = arguments.get(name);
+		if (value == null) {
+			return false;
+		}
+		if (!(value instanceof Boolean)) {
+			throw new IllegalArgumentException("Argument |" + name
+					+ "| must be a boolean");
+		}
+		return (Boolean) value;
+	}
+
+	private static String[] getStringArray(Map<String, Object> arguments,
+			String name) {
+		final Object value = getRequired(arguments, name);
+		if (!(value instanceof List)) {
+			throw new IllegalArgumentException("Argument |" + name
+					+ "| must be an array of strings");
+		}
+		final List<?> list = (List<?>) value;
+		final String[] array = new String[list.size()];
+		for (int i = 0; i < array.length; ++i) {
+			if (!(list.get(i) instanceof String)) {
+				throw new IllegalArgumentException("Argument |" + name
+						+ "| must be an array of strings");
+			}
+			array[i] = (String) list.get(i);
+		}
+		return array;
+	}
+
+	private static ImportSpec[] getImportSpecs(Map<String, Object> arguments,
+			String name) {
+		final Object value = getRequired(arguments, name);
+		if (!(value instanceof List)) {
+			throw new IllegalArgumentException("Argument |" + name
+					+ "| must be an array of objects");
+		}
+		final List<?> list = (List<?>) value;
+		final ImportSpec[] specs = new ImportSpec[list.size()];
+		for (int i = 0; i < specs.length; ++i) {
+			if (!(list.get(i) instanceof Map)) {
+				throw new IllegalArgumentException("Argument |" + name
+						+ "| must be an array of objects");
+			}
+			@SuppressWarnings("unchecked")
+			final Map<String, Object> spec = (Map<String, Object>) list.get(i);
+			specs[i] = new ImportSpec(getString(spec, "query"), getString(
+					spec, "partitionColumn"), getString(spec,
+					"destinationName"));
+		}
+		return specs;
+	}
+
+	private static void writeError(HttpServletResponse response, int status,
+			String message) throws IOException {
+		final Map<String, Object> envelope = new LinkedHashMap<String, Object>();
+		envelope.put("error", message);
+		writeJson(response, status, envelope);
+	}
+
+	private static void writeJson(HttpServletResponse response, int status,
+			Object value) throws IOException {
+		response.setStatus(status);
+		response.setContentType("application/json");
+		response.setCharacterEncoding(ENCODING);
+		final Writer writer = new BufferedWriter(new OutputStreamWriter(
+				response.getOutputStream(), ENCODING));
+		try {
+			Json.write(writer, value);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static class UnknownOperationException extends Exception {
+		private static final long serialVersionUID = -3140276937395627162L;
+
+		UnknownOperationException(String operation) {
+			super("Unknown operation " + operation);
+		}
+	}
+}
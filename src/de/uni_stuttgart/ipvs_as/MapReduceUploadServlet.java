@@ -0,0 +1,146 @@
+package de.uni_stuttgart.ipvs_as;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Upload endpoint for clients that do not run on the same machine as the
+ * service. Operations such as {@link MapReduceWSI#runMapReduce} and
+ * {@link MapReduceWSI#putIntoHDFS} take files from the source machine, i.e.
+ * the machine running the service. Clients can place a file there with
+ *
+ * <pre>
+ * PUT /upload/&lt;scopeId&gt;/&lt;fileName&gt;
+ * </pre>
+ *
+ * with the file contents as request body. The body is streamed to disk as it
+ * arrives, so files up to the configured uploadMaxBytes can be uploaded
+ * without holding them in memory. On success, the response is
+ * the path of the stored file on the service machine (text/plain) that can be
+ * passed to these operations. Uploading a file of the same name again
+ * replaces it. Uploads are deleted along with their scope.
+ *
+ * @author acgessler
+ */
+public class MapReduceUploadServlet extends HttpServlet {
+
+	private static final long serialVersionUID = -6180342254310931722L;
+
+	private static final String ENCODING = "UTF-8";
+
+	private static final long DEFAULT_UPLOAD_MAX_BYTES = 4L * 1024 * 1024 * 1024;
+
+	// Pattern to validate uploaded file names. They end up in local paths, so
+	// be conservative.
+	private static final Pattern fileNamePattern = Pattern
+			.compile("[A-Za-z0-9_\\-][A-Za-z0-9_\\-.]*");
+
+	@Override
+	protected void doPut(HttpServletRequest request,
+			HttpServletResponse response) throws ServletException, IOException {
+		final String pathInfo = request.getPathInfo();
+		final String[] parts = pathInfo == null ? new String[0] : pathInfo
+				.substring(1).split("/");
+		if (parts.length != 2 || !fileNamePattern.matcher(parts[1]).matches()) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+					"Expected /upload/<scopeId>/<fileName>");
+			return;
+		}
+
+		final long scopeId;
+		try {
+			scopeId = Long.parseLong(parts[0]);
+		} catch (NumberFormatException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+					"Invalid scope ID " + parts[0]);
+			return;
+		}
+		final JobRegistry registry = (JobRegistry) getServletContext()
+				.getAttribute("registry");
+		if (registry == null || !registry.hasScope(scopeId)) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND,
+					"Unknown scope " + scopeId);
+			return;
+		}
+
+		final Properties config = (Properties) getServletContext()
+				.getAttribute("config");
+		final long maxBytes = ConfigStub.getLongProperty(config,
+				"uploadMaxBytes", DEFAULT_UPLOAD_MAX_BYTES);
+		if (request.getContentLength() > maxBytes) {
+			response.sendError(
+					HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+					"Uploads are limited to " + maxBytes + " bytes");
+			return;
+		}
+		final File uploadDir = ConfigStub.getUploadDir(config, scopeId);
+		if (!uploadDir.isDirectory() && !uploadDir.mkdirs()) {
+			response.sendError(
+					HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+					"Failed to create upload folder");
+			return;
+		}
+
+		// Write to a temporary file first so that concurrent readers never
+		// see a partial upload.
+		final File file = new File(uploadDir, parts[1]);
+		final File partialFile = File.createTempFile(".upload_", null,
+				uploadDir);
+		try {
+			final InputStream in = request.getInputStream();
+			final OutputStream out = new FileOutputStream(partialFile);
+			// The content length is not known for chunked requests
+			long total = 0;
+			try {
+				final byte[] buffer = new byte[65536];
+				int read;
+				while ((read = in.read(buffer)) != -1 && total <= maxBytes) {
+					total += read;
+					out.write(buffer, 0, read);
+				}
+			} finally {
+				out.close();
+			}
+			if (total > maxBytes) {
+				partialFile.delete();
+				response.sendError(
+						HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+						"Uploads are limited to " + maxBytes + " bytes");
+				return;
+			}
+			file.delete();
+			if (!partialFile.renameTo(file)) {
+				throw new IOException("Failed to rename " + partialFile
+						+ " to " + file);
+			}
+		} catch (IOException e) {
+			partialFile.delete();
+			getServletContext().log("Failed to store upload " + file, e);
+			response.sendError(
+					HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+					"Failed to store upload");
+			return;
+		}
+
+		response.setStatus(HttpServletResponse.SC_OK);
+		response.setContentType("text/plain");
+		response.setCharacterEncoding(ENCODING);
+		final Writer writer = response.getWriter();
+		try {
+			writer.write(file.getAbsolutePath());
+		} finally {
+			writer.close();
+		}
+	}
+}
@@ -16,6 +16,8 @@ import javax.jws.soap.SOAPBinding.Style;
  * <li>Deploy a JAR containing custom MapReduce code onto the cluster and run it
  * (If additional resources are required for the MR, they can be embedded into
  * the JAR.)
+ * <li>Share read-only imports of reference data between scopes (see
+ * {@link #importSharedDataset})
  * </ul>
  * 
  * The service provides partial isolation of clients against each other. Each
@@ -44,6 +46,9 @@ public interface MapReduceWSI {
 	 * 
 	 * Furthermore, calls to {@link #createScope} should be matched with calls
 	 * to {@link #deleteScope}
+	 * 
+	 * All other APIs taking a scope ID fail if the ID has not been issued by
+	 * {@link #createScope} or has since been deleted.
 	 * */
 	@WebMethod
 	long createScope() throws MapReduceWSIException;
@@ -68,22 +73,47 @@ public interface MapReduceWSI {
 	 * The first argument passed to main is the absolute prefix of all HDFS
 	 * imports made via {@link #importIntoHDFS}
 	 * 
+	 * If the service is configured to assume that JARs parse generic options
+	 * (i.e. use ToolRunner), small jobs (as far as the total size of the
+	 * scope's HDFS folder is concerned) are run in uber mode or locally on
+	 * the remote host, see {@link #runStreamingMapReduce}. The generic options
+	 * are then passed before the HDFS prefix.
+	 * 
 	 * @param arguments
 	 *            Arguments to forward to the JARs main() (after the HDFS
 	 *            prefix)
 	 * @param srcJarName
 	 *            Path to the (JDK 1.7-compatible) JAR on the source machine.
+	 * @see #runMapReduceWithMode to control and learn the execution mode
 	 */
 	@WebMethod
 	void runMapReduce(long scopeId, String srcJarName, String[] arguments)
 			throws MapReduceWSIException;
 
+	/**
+	 * Same as {@link #runMapReduce}, except that regular YARN execution can
+	 * be forced and the execution mode chosen is returned.
+	 * 
+	 * @param forceCluster
+	 *            Always run the job as a regular YARN job, regardless of its
+	 *            input size.
+	 * @return The {@link ExecutionMode} the job ran in
+	 */
+	@WebMethod
+	String runMapReduceWithMode(long scopeId, String srcJarName,
+			String[] arguments, boolean forceCluster)
+			throws MapReduceWSIException;
+
 	/**
 	 * Run a MR job from a given Streaming Mode Mapper and Reducer script.
 	 * 
 	 * This deploys both scripts (given as a string containing their full source
 	 * code) onto the cluster and runs them as Streaming Mode MapReduce jobs.
 	 * 
+	 * Jobs on small inputs (as configured in the service configuration) run
+	 * in uber mode, or even locally on the remote host, to save the overhead
+	 * of allocating YARN containers.
+	 * 
 	 * @param mapperScript
 	 *            Source code of the mapper script. See Hadoop reference for
 	 *            examples. Must include a valid UNIX shebang.
@@ -98,12 +128,53 @@ public interface MapReduceWSI {
 	 * 
 	 * @see <a href="http://hadoop.apache.org/docs/r1.2.1/streaming.html">Hadoop
 	 *      Streaming Mode (external)</a>
+	 * @see #runStreamingMapReduceWithMode to control and learn the execution
+	 *      mode
 	 */
 	@WebMethod
 	void runStreamingMapReduce(long scopeId, String mapperScript,
 			String reducerScript, String input, String output)
 			throws MapReduceWSIException;
 
+	/**
+	 * Same as {@link #runStreamingMapReduce}, except that regular YARN
+	 * execution can be forced and the execution mode chosen is returned.
+	 * 
+	 * @param forceCluster
+	 *            Always run the job as a regular YARN job, regardless of its
+	 *            input size.
+	 * @return The {@link ExecutionMode} the job ran in
+	 */
+	@WebMethod
+	String runStreamingMapReduceWithMode(long scopeId, String mapperScript,
+			String reducerScript, String input, String output,
+			boolean forceCluster) throws MapReduceWSIException;
+
+	/**
+	 * Quickly test Streaming Mode Mapper and Reducer scripts on a sample of
+	 * their input. Instead of submitting a job to the cluster, this runs
+	 * 
+	 * <pre>
+	 * mapper | sort | reducer
+	 * </pre>
+	 * 
+	 * directly on the remote host, using the first |sampleBytes| bytes of the
+	 * input as input to the mapper.
+	 * 
+	 * The run is subject to strict time and size limits set in the service
+	 * configuration. Output and stderr are cut off at the size limit.
+	 * 
+	 * @param sampleBytes
+	 *            Size of the input sample. This is capped by the service
+	 *            configuration.
+	 * @see #runStreamingMapReduce for the meaning of the remaining
+	 *      parameters
+	 */
+	@WebMethod
+	DryRunResult dryRunStreaming(long scopeId, String mapperScript,
+			String reducerScript, String input, long sampleBytes)
+			throws MapReduceWSIException;
+
 	/**
 	 * Import rows from a JDBC-compatible RDBMS into text files on HDFS.
 	 * 
@@ -125,8 +196,11 @@ public interface MapReduceWSI {
 	 * @param partitionColumn
 	 *            This column is used to partition the input data for parallel
 	 *            import from multiple mappers. For best results, it should have
-	 *            many distinct values that are uniformly distributed (i.e. a
-	 *            plain AUTO INCREMENT / SERIAL column is perfect).
+	 *            many distinct values (i.e. a plain AUTO INCREMENT / SERIAL
+	 *            column is perfect). Skewed distributions are balanced by
+	 *            sampling the column's quantiles in the source database if it
+	 *            supports window functions; otherwise the values should be
+	 *            uniformly distributed.
 	 * 
 	 *            The column name must be prefixed by the table name, i.e.
 	 * 
@@ -165,4 +239,264 @@ public interface MapReduceWSI {
 	void exportToRDBMS(long scopeId, String jdbcURI, String dbUser,
 			String dbCredentials, String tableName, String sourceName)
 			throws MapReduceWSIException;
+
+	/**
+	 * Import rows from a JDBC-compatible RDBMS into a shared, read-only
+	 * dataset that can be attached to any scope using
+	 * {@link #attachSharedDataset}.
+	 * 
+	 * If a dataset of the given name already exists, it is reused as long as
+	 * it is younger than |maxAgeSeconds|. Older copies are revalidated by
+	 * comparing the row count and the maximum value of |partitionColumn| of
+	 * the source; only if these changed, the data is imported again.
+	 * 
+	 * Re-importing never affects scopes that already attached the dataset:
+	 * they keep seeing the old copy until they detach from it.
+	 * 
+	 * @param datasetName
+	 *            Catalog-wide name of the dataset. Only letters, digits,
+	 *            underscores and dashes are allowed.
+	 * @param maxAgeSeconds
+	 *            Time for which an existing copy is considered fresh without
+	 *            consulting the source database. Pass 0 to always revalidate.
+	 * @return Absolute HDFS path of the current copy of the dataset
+	 * @see #importIntoHDFS for the meaning of the remaining parameters
+	 */
+	@WebMethod
+	String importSharedDataset(String datasetName, String jdbcURI,
+			String dbUser, String dbCredentials, String query,
+			String partitionColumn, long maxAgeSeconds)
+			throws MapReduceWSIException;
+
+	/**
+	 * Attach a shared dataset previously imported using
+	 * {@link #importSharedDataset} to a scope. No data is copied.
+	 * 
+	 * Within the scope, the dataset can then be used under its name wherever
+	 * a HDFS source name is expected (i.e. as input to
+	 * {@link #runStreamingMapReduce} or source of {@link #exportToRDBMS}).
+	 * MR JARs run via {@link #runMapReduce} should be passed the returned
+	 * absolute path.
+	 * 
+	 * The dataset stays attached until {@link #detachSharedDataset} or
+	 * {@link #deleteScope} is called.
+	 * 
+	 * @return Absolute HDFS path of the (read-only) dataset
+	 */
+	@WebMethod
+	String attachSharedDataset(long scopeId, String datasetName)
+			throws MapReduceWSIException;
+
+	/**
+	 * Detach a shared dataset from a scope. Does nothing if the dataset is not
+	 * attached to the scope.
+	 */
+	@WebMethod
+	void detachSharedDataset(long scopeId, String datasetName)
+			throws MapReduceWSIException;
+
+	/**
+	 * Asynchronous variant of {@link #runMapReduce}. Returns immediately.
+	 * 
+	 * @param callbackURL
+	 *            Optional HTTP(S) URL. Once the operation finishes, a JSON
+	 *            completion event (operation ID, status, duration, output
+	 *            paths and error message, if any) is POSTed to it. Failed
+	 *            deliveries are retried a few times with increasing delays.
+	 *            Pass null or an empty string to not receive a callback.
+	 * @return Operation ID, as referenced by the completion event.
+	 */
+	@WebMethod
+	long runMapReduceAsync(long scopeId, String srcJarName,
+			String[] arguments, String callbackURL)
+			throws MapReduceWSIException;
+
+	/**
+	 * Asynchronous variant of {@link #runMapReduceWithMode}. Returns
+	 * immediately.
+	 * 
+	 * @see #runMapReduceAsync for the meaning of |callbackURL| and the return
+	 *      value
+	 */
+	@WebMethod
+	long runMapReduceWithModeAsync(long scopeId, String srcJarName,
+			String[] arguments, boolean forceCluster, String callbackURL)
+			throws MapReduceWSIException;
+
+	/**
+	 * Asynchronous variant of {@link #runStreamingMapReduce}. Returns
+	 * immediately.
+	 * 
+	 * @see #runMapReduceAsync for the meaning of |callbackURL| and the return
+	 *      value
+	 */
+	@WebMethod
+	long runStreamingMapReduceAsync(long scopeId, String mapperScript,
+			String reducerScript, String input, String output,
+			String callbackURL) throws MapReduceWSIException;
+
+	/**
+	 * Asynchronous variant of {@link #runStreamingMapReduceWithMode}. Returns
+	 * immediately.
+	 * 
+	 * @see #runMapReduceAsync for the meaning of |callbackURL| and the return
+	 *      value
+	 */
+	@WebMethod
+	long runStreamingMapReduceWithModeAsync(long scopeId,
+			String mapperScript, String reducerScript, String input,
+			String output, boolean forceCluster, String callbackURL)
+			throws MapReduceWSIException;
+
+	/**
+	 * Asynchronous variant of {@link #importIntoHDFS}. Returns immediately.
+	 * 
+	 * @see #runMapReduceAsync for the meaning of |callbackURL| and the return
+	 *      value
+	 */
+	@WebMethod
+	long importIntoHDFSAsync(long scopeId, String jdbcURI, String dbUser,
+			String dbCredentials, String query, String partitionColumn,
+			String destinationName, String callbackURL)
+			throws MapReduceWSIException;
+
+	/**
+	 * Import multiple tables from the same JDBC-compatible RDBMS into HDFS,
+	 * running up to |parallelism| imports concurrently.
+	 * 
+	 * A failing import does not affect the others. Per-table outcomes are
+	 * reported in the result. Logs of the individual imports are kept on the
+	 * remote host in the scope's local folder.
+	 * 
+	 * @param imports
+	 *            Tables to import. See {@link #importIntoHDFS} for the
+	 *            requirements on the individual fields.
+	 * @param parallelism
+	 *            Maximum number of concurrently running imports. This is
+	 *            capped by the service configuration to protect the source
+	 *            database.
+	 * @return Outcome of each import, in the same order as |imports|
+	 * @see #importIntoHDFS for the meaning of the remaining parameters
+	 */
+	@WebMethod
+	ImportResult[] importIntoHDFSBatch(long scopeId, String jdbcURI,
+			String dbUser, String dbCredentials, ImportSpec[] imports,
+			int parallelism) throws MapReduceWSIException;
+
+	/**
+	 * List the IDs of all scopes that have been created using
+	 * {@link #createScope} and not yet been deleted.
+	 * 
+	 * This is answered from the service's local registry and does not
+	 * involve the cluster.
+	 */
+	@WebMethod
+	long[] listScopes() throws MapReduceWSIException;
+
+	/**
+	 * List all operations (i.e. imports, exports and MapReduce runs) that have
+	 * been run in a scope, including their timings, outcomes and the HDFS
+	 * paths they wrote, in order of submission.
+	 * 
+	 * This is answered from the service's local registry and does not
+	 * involve the cluster.
+	 */
+	@WebMethod
+	JobInfo[] listJobs(long scopeId) throws MapReduceWSIException;
+
+	/**
+	 * Get the timeline of a recent operation: timed spans for waiting in the
+	 * queue, connecting to the remote host, each upload and each remote
+	 * command, including the IDs of the YARN applications started.
+	 * 
+	 * The operation's trace ID is passed to all remote commands in the
+	 * MAPREDUCE_WSI_TRACE_ID environment variable. Streaming jobs submitted
+	 * through the agent get it in the environment of their tasks instead.
+	 * 
+	 * Every call is traced, except for calls that only read the service's
+	 * local state (i.e. {@link #listJobs}). Traces are kept in memory for a
+	 * bounded number of recent operations only. Operation IDs of synchronous
+	 * calls can be obtained through {@link #listJobs} or, for calls not run in
+	 * a scope, {@link #listTraces}.
+	 * 
+	 * @param operationId
+	 *            ID of the operation
+	 * @throws MapReduceWSIException
+	 *             If there is no trace for the operation (anymore)
+	 */
+	@WebMethod
+	Trace getTrace(long operationId) throws MapReduceWSIException;
+
+	/**
+	 * Get the traces of the most recent operations (see {@link #getTrace}),
+	 * most recent first.
+	 * 
+	 * @param maxCount
+	 *            Maximum number of traces to return
+	 */
+	@WebMethod
+	Trace[] listTraces(int maxCount) throws MapReduceWSIException;
+
+	/**
+	 * Rewrite a dataset in a scope into a few large files.
+	 * 
+	 * Imports and MapReduce runs leave one file per mapper or reducer behind,
+	 * and many small files make subsequent jobs start one task per file.
+	 * Records (lines) are preserved, but not necessarily in their original
+	 * order.
+	 * 
+	 * This also happens automatically after imports and Streaming Mode runs
+	 * whose output consists of more files than configured in the service
+	 * configuration.
+	 * 
+	 * @param name
+	 *            Name of the dataset (directory) in the scope, i.e. the
+	 *            |destinationName| of an import or |output| of a MapReduce
+	 *            run. Shared datasets cannot be compacted.
+	 * @param targetFileSize
+	 *            Maximum (uncompressed) size of the resulting files in bytes
+	 * @param compress
+	 *            Whether to gzip the resulting files. Hadoop decompresses
+	 *            them transparently when they are used as input.
+	 */
+	@WebMethod
+	CompactionResult compact(long scopeId, String name, long targetFileSize,
+			boolean compress) throws MapReduceWSIException;
+
+	/**
+	 * Get final counters (i.e. record counts, spilled records, shuffle bytes
+	 * and GC time) and task timings of all MapReduce jobs an operation
+	 * started, i.e. a {@link #runMapReduce}, {@link #runStreamingMapReduce} or
+	 * a sqoop import or export.
+	 * 
+	 * Reports are fetched from the cluster's MapReduce JobHistory Server
+	 * once the operation finished, so they are only available for as long
+	 * as the JobHistory Server retains the jobs. The IDs of the jobs are also
+	 * listed by {@link #listJobs}.
+	 * 
+	 * @param operationId
+	 *            ID of the operation
+	 * @return One report per MapReduce job started by the operation, in the
+	 *         order the jobs were started
+	 */
+	@WebMethod
+	JobReport[] getJobReport(long operationId) throws MapReduceWSIException;
+
+	/**
+	 * Copy a file uploaded to the scope into a HDFS dataset of the scope.
+	 * 
+	 * The file must be uploaded first, see {@link MapReduceUploadServlet}.
+	 * 
+	 * @param srcFileName
+	 *            Path to the uploaded file on the source machine, as returned
+	 *            by the upload, or its name. Files outside the upload folder
+	 *            of the scope are rejected.
+	 * @param destinationName
+	 *            Name of the dataset to add the file to. The dataset is
+	 *            created if it does not exist yet, a file of the same name in
+	 *            it is replaced.
+	 */
+	@WebMethod
+	void putIntoHDFS(long scopeId, String srcFileName, String destinationName)
+			throws MapReduceWSIException;
 }
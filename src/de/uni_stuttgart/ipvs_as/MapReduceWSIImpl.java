@@ -4,6 +4,12 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Properties;
 import java.util.Random;
 import java.util.regex.Matcher;
@@ -15,12 +21,6 @@ import javax.servlet.ServletContext;
 import javax.xml.ws.WebServiceContext;
 import javax.xml.ws.handler.MessageContext;
 
-import net.neoremind.sshxcute.core.ConnBean;
-import net.neoremind.sshxcute.core.IOptionName;
-import net.neoremind.sshxcute.core.SSHExec;
-import net.neoremind.sshxcute.exception.TaskExecFailException;
-import net.neoremind.sshxcute.task.impl.ExecCommand;
-
 /**
  * Implementation of {@link MapReduceWSI} that can be run on a node that is not
  * part of a hadoop cluster but has (password-based) SSH access to a *nix
@@ -56,46 +56,371 @@ public class MapReduceWSIImpl implements MapReduceWSI {
 	@Resource
 	private WebServiceContext context;
 
+	// Set if the instance is not managed by JAX-WS, i.e. when it backs the
+	// JSON/HTTP binding. Otherwise, the servlet context is obtained through
+	// |context|.
+	private final ServletContext servletContext;
+
+	// Operation ID to use for the next operation run on this instance, or 0
+	// to allocate a new one. Used by OperationExecutor to keep the ID it
+	// handed out to the client.
+	private long presetOperationId;
+
+	// Trace of the operation the current thread is running, if any. This is
+	// per thread as JAX-WS serves concurrent requests on the same instance.
+	private static final ThreadLocal<Trace> currentTrace = new ThreadLocal<Trace>();
+
+	public MapReduceWSIImpl() {
+		this.servletContext = null;
+	}
+
+	/**
+	 * Construct an instance that runs outside of JAX-WS, using the given
+	 * servlet context to access configuration and shared state.
+	 */
+	public MapReduceWSIImpl(ServletContext servletContext) {
+		this.servletContext = servletContext;
+	}
+
+	/**
+	 * Construct an instance that runs outside of JAX-WS and records the next
+	 * operation run on it under the given operation ID.
+	 */
+	MapReduceWSIImpl(ServletContext servletContext, long operationId) {
+		this.servletContext = servletContext;
+		this.presetOperationId = operationId;
+	}
+
 	@Override
 	public long createScope() throws MapReduceWSIException {
+		return runTraced("createScope", new JobBody<Long>() {
+			public Long run() throws MapReduceWSIException {
+				return doCreateScope();
+			}
+		});
+	}
+
+	private long doCreateScope() throws MapReduceWSIException {
 		// Simply generate a random scope id - the likelihood
 		// of collisions is sufficiently low.
 		//
 		// Otherwise, to really guarantee an unique scope we
 		// would need an atomic counter on the cluster.
-		final long scopeId = Math.abs((new Random()).nextLong());
+		//
+		// The local registry at least allows us to rule out collisions with
+		// existing scopes.
+		final JobRegistry registry = getRegistry();
+		final Random random = new Random();
+		long scopeId;
+		do {
+			scopeId = Math.abs(random.nextLong());
+		} while (registry.hasScope(scopeId));
 
 		// Create both HDFS and local folders
 		try {
-			execRemote("hadoop fs -mkdir " + getHDFSDir(scopeId));
+			hdfsMkdir(getHDFSDir(scopeId));
 			execRemote("mkdir -p " + getRemoteLocalDir(scopeId));
 		} catch (MapReduceWSIException e) {
 			throw new MapReduceWSIException("Failed to create scope", e);
 		}
+
+		try {
+			registry.addScope(scopeId);
+		} catch (IOException e) {
+			throw new MapReduceWSIException("Failed to register scope", e);
+		}
 		return scopeId;
 	}
 
 	@Override
-	public void deleteScope(long scopeId) throws MapReduceWSIException {
+	public void deleteScope(final long scopeId) throws MapReduceWSIException {
+		requireScope(scopeId);
+		runTraced("deleteScope", new JobBody<Void>() {
+			public Void run() throws MapReduceWSIException {
+				doDeleteScope(scopeId);
+				return null;
+			}
+		});
+	}
+
+	private void doDeleteScope(long scopeId) throws MapReduceWSIException {
 		// Delete both local and HDFS folders (+ contents)
 		try {
-			execRemote("hadoop fs -rmr " + getHDFSDir(scopeId));
+			hdfsDelete(getHDFSDir(scopeId));
 			execRemote("rm -rf " + getRemoteLocalDir(scopeId));
 		} catch (MapReduceWSIException e) {
 			throw new MapReduceWSIException("Failed to run clean up scope", e);
 		}
+
+		// Release any shared datasets the scope was still using
+		try {
+			deleteDatasets(getCatalog().detachAll(scopeId));
+		} catch (IOException e) {
+			throw new MapReduceWSIException(
+					"Failed to record detaching shared datasets", e);
+		}
+
+		// Files uploaded to the scope, see MapReduceUploadServlet
+		deleteLocalFiles(ConfigStub.getUploadDir(getConfig(), scopeId));
+
+		try {
+			getRegistry().removeScope(scopeId);
+		} catch (IOException e) {
+			throw new MapReduceWSIException("Failed to unregister scope", e);
+		}
+	}
+
+	// Recursively delete a file or directory on the service host
+	private static void deleteLocalFiles(File file) {
+		final File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteLocalFiles(child);
+			}
+		}
+		file.delete();
+	}
+
+	@Override
+	public long[] listScopes() throws MapReduceWSIException {
+		return getRegistry().listScopes();
+	}
+
+	@Override
+	public JobInfo[] listJobs(long scopeId) throws MapReduceWSIException {
+		requireScope(scopeId);
+		return getRegistry().listJobs(scopeId);
+	}
+
+	// Separates the responses of multiple curl invocations in a single remote
+	// command
+	private static final String RESPONSE_SEPARATOR = "MAPREDUCE_WSI_END_OF_RESPONSE";
+
+	@Override
+	public JobReport[] getJobReport(long operationId)
+			throws MapReduceWSIException {
+		final JobInfo job = getRegistry().getJob(operationId);
+		if (job == null) {
+			throw new MapReduceWSIException("Unknown operation " + operationId);
+		}
+
+		return runTraced("getJobReport", new JobBody<JobReport[]>() {
+			public JobReport[] run() throws MapReduceWSIException {
+				final JobReport[] reports = new JobReport[job.getJobIds().length];
+				for (int i = 0; i < reports.length; ++i) {
+					reports[i] = fetchJobReport(job.getJobIds()[i]);
+				}
+				return reports;
+			}
+		});
+	}
+
+	// Fetch the report for MapReduce job |jobId| from the JobHistory Server.
+	// The server is typically only reachable from within the cluster, so the
+	// requests are issued from the remote host.
+	private JobReport fetchJobReport(String jobId)
+			throws MapReduceWSIException {
+		if (!jobId.matches("job_\\d+_\\d+")) {
+			throw new IllegalArgumentException("Invalid job ID " + jobId);
+		}
+		final String jobURL = String.format("%s/ws/v1/history/mapreduce/jobs/%s",
+				getConfig().getProperty("jobHistoryURL", "http://localhost:19888"),
+				jobId);
+
+		final StringBuilder sb = new StringBuilder();
+		for (String suffix : new String[] { "", "/counters", "/tasks" }) {
+			sb.append(String.format(
+					"curl -s -f -H 'Accept: application/json' %s; echo; echo %s; ",
+					escapeShellArgument(jobURL + suffix), RESPONSE_SEPARATOR));
+		}
+		final String output;
+		try {
+			output = execRemote(sb.toString());
+		} catch (MapReduceWSIException e) {
+			throw new MapReduceWSIException(
+					"Failed to query JobHistory Server for job " + jobId, e);
+		}
+
+		final String[] responses = output.split(RESPONSE_SEPARATOR);
+		final Map<?, ?>[] documents = new Map<?, ?>[3];
+		try {
+			for (int i = 0; i < documents.length; ++i) {
+				documents[i] = (Map<?, ?>) Json.read(new StringReader(
+						responses[i].trim()));
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		} catch (RuntimeException e) {
+			// Empty or malformed response, or not a JSON object
+			throw new MapReduceWSIException(
+					"No report available from JobHistory Server for job "
+							+ jobId);
+		}
+		if (!(documents[0].get("job") instanceof Map)) {
+			throw new MapReduceWSIException(
+					"No report available from JobHistory Server for job "
+							+ jobId);
+		}
+		return JobReport.fromHistory(documents[0], documents[1], documents[2]);
+	}
+
+	@Override
+	public Trace getTrace(long operationId) throws MapReduceWSIException {
+		final Trace trace = getTraces().get(operationId);
+		if (trace == null) {
+			throw new MapReduceWSIException("No trace for operation "
+					+ operationId);
+		}
+		return trace;
+	}
+
+	@Override
+	public Trace[] listTraces(int maxCount) throws MapReduceWSIException {
+		if (maxCount < 0) {
+			throw new IllegalArgumentException("|maxCount| must not be negative");
+		}
+		return getTraces().list(maxCount);
+	}
+
+	// Run |body| as operation |operationName| that is traced, but not recorded
+	// in the registry as it is not run in a scope or manages the scope itself
+	private <T> T runTraced(String operationName, JobBody<T> body)
+			throws MapReduceWSIException {
+		final Trace trace = getTraces().begin(getRegistry().newOperationId(),
+				operationName);
+		currentTrace.set(trace);
+		try {
+			return body.run();
+		} finally {
+			currentTrace.remove();
+			trace.setEndTime(System.currentTimeMillis());
+		}
+	}
+
+	// Body of an operation run through runAsJob() or runTraced()
+	private interface JobBody<T> {
+		T run() throws MapReduceWSIException;
+	}
+
+	// Run |body| as operation |operationName| in scope |scopeId| and record
+	// it in the registry. |artifacts| are the absolute HDFS paths the
+	// operation writes to if it succeeds.
+	private <T> T runAsJob(long scopeId, String operationName,
+			String[] artifacts, JobBody<T> body) throws MapReduceWSIException {
+		requireScope(scopeId);
+
+		final JobRegistry registry = getRegistry();
+		long operationId = presetOperationId;
+		if (operationId != 0) {
+			presetOperationId = 0;
+		} else {
+			operationId = registry.newOperationId();
+		}
+
+		final JobInfo queued = registry.getJob(operationId);
+		try {
+			registry.jobStarted(operationId, scopeId, operationName);
+		} catch (IOException e) {
+			throw new MapReduceWSIException("Failed to register operation", e);
+		}
+
+		final Trace trace = getTraces().begin(operationId, operationName);
+		if (queued != null) {
+			trace.addSpan(new TraceSpan(TraceSpan.QUEUE, null,
+					queued.getSubmitTime(), trace.getStartTime()
+							- queued.getSubmitTime(), new String[0]));
+		}
+		currentTrace.set(trace);
+
+		String error = "Unexpected failure";
+		try {
+			final T result = body.run();
+			error = null;
+			return result;
+		} catch (MapReduceWSIException e) {
+			error = e.getMessage();
+			throw e;
+		} catch (RuntimeException e) {
+			error = e.toString();
+			throw e;
+		} finally {
+			currentTrace.remove();
+			trace.setEndTime(System.currentTimeMillis());
+			try {
+				registry.jobFinished(operationId, error,
+						error == null ? artifacts : new String[0],
+						getJobIds(trace));
+			} catch (IOException e) {
+				// Don't mask the actual outcome of the operation
+				e.printStackTrace();
+			}
+		}
+	}
+
+	// Get the IDs of all MapReduce jobs started during |trace|. Job IDs share
+	// their suffix with the IDs of the YARN applications running them.
+	private static String[] getJobIds(Trace trace) {
+		final Set<String> jobIds = new LinkedHashSet<String>();
+		for (TraceSpan span : trace.getSpans()) {
+			for (String applicationId : span.getApplicationIds()) {
+				jobIds.add(applicationId.replaceFirst("^application_", "job_"));
+			}
+		}
+		return jobIds.toArray(new String[jobIds.size()]);
+	}
+
+	// Check that |scopeId| refers to an existing scope. This only consults the
+	// local registry, so it is cheap enough to do before any operation.
+	private void requireScope(long scopeId) throws MapReduceWSIException {
+		if (!getRegistry().hasScope(scopeId)) {
+			throw new MapReduceWSIException("Unknown scope " + scopeId);
+		}
 	}
 
 	@Override
-	public void runMapReduce(long scopeId, String srcJarName, String[] arguments)
+	public void runMapReduce(long scopeId, String srcJarName,
+			String[] arguments) throws MapReduceWSIException {
+		runMapReduceWithMode(scopeId, srcJarName, arguments, false);
+	}
+
+	@Override
+	public String runMapReduceWithMode(final long scopeId,
+			final String srcJarName, final String[] arguments,
+			final boolean forceCluster) throws MapReduceWSIException {
+		return runAsJob(scopeId, "runMapReduce",
+				new String[] { getHDFSDir(scopeId) }, new JobBody<String>() {
+					public String run() throws MapReduceWSIException {
+						return doRunMapReduce(scopeId, srcJarName, arguments,
+								forceCluster);
+					}
+				});
+	}
+
+	private String doRunMapReduce(long scopeId, String srcJarName,
+			String[] arguments, boolean forceCluster)
 			throws MapReduceWSIException {
 
-		final String destName = getRemoteLocalDir(scopeId)
-				+ "/mapreduce_wsi_upload.jar";
+		final String destName = String.format("%s/%s.jar",
+				getRemoteLocalDir(scopeId),
+				getOperationFileName("mapreduce_wsi_upload"));
+
+		// Options to select the execution mode can only be passed to JARs
+		// that parse generic options, i.e. through ToolRunner. The input is
+		// not known to us, the size of the entire scope serves as estimate.
+		String mode = ExecutionMode.CLUSTER;
+		if (!forceCluster
+				&& Boolean.parseBoolean(getConfig().getProperty(
+						"mapReduceJarsUseToolRunner"))) {
+			mode = chooseExecutionMode(hdfsContentLength(getHDFSDir(scopeId)));
+		}
 
 		final StringBuilder sb = new StringBuilder();
 		sb.append("yarn jar ");
 		sb.append(destName);
+		for (String option : getExecutionModeOptions(mode)) {
+			sb.append(' ');
+			sb.append(option);
+		}
 		sb.append(' ');
 		sb.append(getHDFSDir(scopeId));
 		sb.append(' ');
@@ -107,11 +432,56 @@ public class MapReduceWSIImpl implements MapReduceWSI {
 		// Deploy the JAR to the remote, then let yarn do the rest
 		try {
 			copyToRemote(srcJarName, destName);
-			execRemote(sb.toString());
+			// The IDs of the YARN applications started are logged to stderr,
+			// merge it so that they can be traced.
+			execRemote(sb.toString() + " 2>&1");
 		} catch (MapReduceWSIException e) {
 			throw new MapReduceWSIException(
 					"Failed to run MR remotely on the cluster", e);
+		} finally {
+			deleteRemoteFiles(destName);
+		}
+		return mode;
+	}
+
+	// Input size below which a job runs in ExecutionMode.LOCAL or
+	// ExecutionMode.UBER, respectively. The defaults roughly correspond to the
+	// point where container allocation no longer dominates the job's run time.
+	private static final long DEFAULT_LOCAL_MODE_MAX_INPUT_BYTES = 16 * 1024 * 1024;
+	private static final long DEFAULT_UBER_MODE_MAX_INPUT_BYTES = 256 * 1024 * 1024;
+
+	// Choose the execution mode for a job with an input of |inputBytes|, -1
+	// if the input size is not known
+	private String chooseExecutionMode(long inputBytes) {
+		if (inputBytes < 0) {
+			return ExecutionMode.CLUSTER;
+		}
+		final Properties config = getConfig();
+		if (inputBytes < ConfigStub.getLongProperty(config,
+				"localModeMaxInputBytes", DEFAULT_LOCAL_MODE_MAX_INPUT_BYTES)) {
+			return ExecutionMode.LOCAL;
 		}
+		if (inputBytes < ConfigStub.getLongProperty(config,
+				"uberModeMaxInputBytes", DEFAULT_UBER_MODE_MAX_INPUT_BYTES)) {
+			return ExecutionMode.UBER;
+		}
+		return ExecutionMode.CLUSTER;
+	}
+
+	// Get the generic options (as understood by ToolRunner) that make a job
+	// run in execution mode |mode|
+	private static List<String> getExecutionModeOptions(String mode) {
+		final List<String> options = new ArrayList<String>();
+		if (mode.equals(ExecutionMode.LOCAL)) {
+			options.add("-D");
+			options.add("mapreduce.framework.name=local");
+		} else if (mode.equals(ExecutionMode.UBER)) {
+			// YARN still falls back to regular execution if the job exceeds
+			// the (cluster-configured) limits for uber jobs.
+			options.add("-D");
+			options.add("mapreduce.job.ubertask.enable=true");
+		}
+		return options;
 	}
 
 	// Write |contents| to a temporary file and returns the absolute path name
@@ -129,14 +499,73 @@ public class MapReduceWSIImpl implements MapReduceWSI {
 		return file;
 	}
 
+	// Delete files named after the current operation (see
+	// getOperationFileName) from the remote host once the operation no
+	// longer needs them. Failures are logged only, the files do no harm.
+	private void deleteRemoteFiles(String... names) {
+		final StringBuilder sb = new StringBuilder("rm -f");
+		for (String name : names) {
+			sb.append(' ');
+			sb.append(name);
+		}
+		try {
+			execRemote(sb.toString());
+		} catch (MapReduceWSIException e) {
+			getServletContext().log("Failed to delete remote files", e);
+		}
+	}
+
+	// Upload |contents| to the file |destName| on the remote host
+	private void copyContentsToRemote(String contents, String destName)
+			throws MapReduceWSIException {
+		final File file;
+		try {
+			file = writeToTemporaryFile(contents);
+		} catch (IOException e) {
+			throw new MapReduceWSIException(
+					"Failed to write (local) temporary file", e);
+		}
+		try {
+			copyToRemote(file.getAbsolutePath(), destName);
+		} finally {
+			// deleteOnExit() is not sufficient for a potentially
+			// long-running web service.
+			file.delete();
+		}
+	}
+
 	@Override
 	public void runStreamingMapReduce(long scopeId, String mapperScript,
 			String reducerScript, String input, String output)
 			throws MapReduceWSIException {
-		final String mapFileDestName = getRemoteLocalDir(scopeId)
-				+ "/streaming_mapper";
-		final String reduceFileDestName = getRemoteLocalDir(scopeId)
-				+ "/streaming_reducer";
+		runStreamingMapReduceWithMode(scopeId, mapperScript, reducerScript,
+				input, output, false);
+	}
+
+	@Override
+	public String runStreamingMapReduceWithMode(final long scopeId,
+			final String mapperScript, final String reducerScript,
+			final String input, final String output, final boolean forceCluster)
+			throws MapReduceWSIException {
+		return runAsJob(scopeId, "runStreamingMapReduce",
+				new String[] { getHDFSDir(scopeId) + "/" + output },
+				new JobBody<String>() {
+					public String run() throws MapReduceWSIException {
+						return doRunStreamingMapReduce(scopeId, mapperScript,
+								reducerScript, input, output, forceCluster);
+					}
+				});
+	}
+
+	private String doRunStreamingMapReduce(long scopeId, String mapperScript,
+			String reducerScript, String input, String output,
+			boolean forceCluster) throws MapReduceWSIException {
+		final String mapFileDestName = String.format("%s/%s",
+				getRemoteLocalDir(scopeId),
+				getOperationFileName("streaming_mapper"));
+		final String reduceFileDestName = String.format("%s/%s",
+				getRemoteLocalDir(scopeId),
+				getOperationFileName("streaming_reducer"));
 
 		// Deploy mapper and reducer script.
 		// TODO(acgessler) Unfortunately, SSHXCUTE only has a utility
@@ -168,46 +597,269 @@ public class MapReduceWSIImpl implements MapReduceWSI {
 		// Build the command line for running the Streaming MapReduce
 		// http://hadoop.apache.org/docs/r1.2.1/streaming.html
 		final String hdfsPrefix = getHDFSDir(scopeId) + "/";
-		final StringBuilder sb = new StringBuilder();
-		sb.append("hadoop jar ");
-		sb.append(HADOOP_STREAMING_JAR);
-		sb.append(' ');
+		final String inputPath = resolveHDFSPath(scopeId, input);
+		final String mode = forceCluster ? ExecutionMode.CLUSTER
+				: chooseExecutionMode(hdfsContentLength(inputPath));
 
-		sb.append("-input ");
-		sb.append(hdfsPrefix);
-		sb.append(input);
-		sb.append(' ');
+		// Generic options must precede all Streaming options
+		final List<String> streamingArguments = getExecutionModeOptions(mode);
+		streamingArguments.add("-input");
+		streamingArguments.add(inputPath);
 
-		sb.append("-output ");
-		sb.append(hdfsPrefix);
-		sb.append(output);
-		sb.append(' ');
+		streamingArguments.add("-output");
+		streamingArguments.add(hdfsPrefix + output);
 
-		sb.append("-mapper ");
-		sb.append(mapFileDestName);
-		sb.append(' ');
+		streamingArguments.add("-mapper");
+		streamingArguments.add(mapFileDestName);
 
-		sb.append("-reducer ");
-		sb.append(reduceFileDestName);
-		sb.append(' ');
+		streamingArguments.add("-reducer");
+		streamingArguments.add(reduceFileDestName);
 
 		// The -file causes the scripts to be deployed the cluster machines as a
 		// part of job submission.
-		sb.append("-file ");
-		sb.append(mapFileDestName);
-		sb.append(' ');
+		streamingArguments.add("-file");
+		streamingArguments.add(mapFileDestName);
 
-		sb.append("-file ");
-		sb.append(reduceFileDestName);
-		// sb.append(' ');
+		streamingArguments.add("-file");
+		streamingArguments.add(reduceFileDestName);
 
-		// Run Streaming MapReduce
+		// Run Streaming MapReduce, preferably from the agent's warm JVM. The
+		// agent cannot pass environment variables the way a shell does, it
+		// sets the trace ID in the job's environment instead.
 		try {
-			execRemote(sb.toString());
+			final Trace trace = currentTrace.get();
+			final List<String> agentArguments = new ArrayList<String>();
+			agentArguments.add(trace == null ? "" : trace.getTraceId());
+			agentArguments.addAll(streamingArguments);
+			final String[] result = callAgent(0, "streaming",
+					agentArguments.toArray(new String[0]));
+			if (result == null) {
+				final StringBuilder sb = new StringBuilder();
+				sb.append("hadoop jar ");
+				sb.append(HADOOP_STREAMING_JAR);
+				for (String argument : streamingArguments) {
+					sb.append(' ');
+					sb.append(argument);
+				}
+				sb.append(" 2>&1");
+				execRemote(sb.toString());
+			} else if (!result[0].equals("0")) {
+				throw new MapReduceWSIException(String.format(
+						"Streaming job %s exited with code %s", result[1],
+						result[0]));
+			}
 		} catch (MapReduceWSIException e) {
 			throw new MapReduceWSIException(
 					"Failed to run Streaming MR remotely on the cluster", e);
+		} finally {
+			deleteRemoteFiles(mapFileDestName, reduceFileDestName);
+		}
+		compactIfFragmented(scopeId, output);
+		return mode;
+	}
+
+	@Override
+	public long runMapReduceAsync(long scopeId, String srcJarName,
+			String[] arguments, String callbackURL)
+			throws MapReduceWSIException {
+		return runMapReduceWithModeAsync(scopeId, srcJarName, arguments,
+				false, callbackURL);
+	}
+
+	@Override
+	public long runMapReduceWithModeAsync(final long scopeId,
+			final String srcJarName, final String[] arguments,
+			final boolean forceCluster, String callbackURL)
+			throws MapReduceWSIException {
+		requireScope(scopeId);
+		return getOperations().submit("runMapReduce", scopeId,
+				new String[] { getHDFSDir(scopeId) }, callbackURL,
+				new OperationExecutor.Operation() {
+					public void run(MapReduceWSI wsi)
+							throws MapReduceWSIException {
+						wsi.runMapReduceWithMode(scopeId, srcJarName,
+								arguments, forceCluster);
+					}
+				});
+	}
+
+	@Override
+	public long runStreamingMapReduceAsync(long scopeId, String mapperScript,
+			String reducerScript, String input, String output,
+			String callbackURL) throws MapReduceWSIException {
+		return runStreamingMapReduceWithModeAsync(scopeId, mapperScript,
+				reducerScript, input, output, false, callbackURL);
+	}
+
+	@Override
+	public long runStreamingMapReduceWithModeAsync(final long scopeId,
+			final String mapperScript, final String reducerScript,
+			final String input, final String output,
+			final boolean forceCluster, String callbackURL)
+			throws MapReduceWSIException {
+		requireScope(scopeId);
+		return getOperations().submit("runStreamingMapReduce", scopeId,
+				new String[] { getHDFSDir(scopeId) + "/" + output },
+				callbackURL, new OperationExecutor.Operation() {
+					public void run(MapReduceWSI wsi)
+							throws MapReduceWSIException {
+						wsi.runStreamingMapReduceWithMode(scopeId,
+								mapperScript, reducerScript, input, output,
+								forceCluster);
+					}
+				});
+	}
+
+	// Prefix of the status line printed by the dry run script, followed by
+	// the exit code of the scripts and the sizes of the input sample, of the
+	// output and of stderr.
+	private static final String DRY_RUN_STATUS_MARKER = "MAPREDUCE_WSI_DRYRUN";
+
+	// Limit for the size of any file written during a dry run (i.e. the
+	// output or sort's temporary files) as a multiple of the sample size.
+	// Mappers may legitimately expand their input, but not without bound.
+	private static final int DRY_RUN_FILE_SIZE_FACTOR = 16;
+
+	@Override
+	public DryRunResult dryRunStreaming(final long scopeId,
+			final String mapperScript, final String reducerScript,
+			final String input, final long sampleBytes)
+			throws MapReduceWSIException {
+		return runAsJob(scopeId, "dryRunStreaming", new String[0],
+				new JobBody<DryRunResult>() {
+					public DryRunResult run() throws MapReduceWSIException {
+						return doDryRunStreaming(scopeId, mapperScript,
+								reducerScript, input, sampleBytes);
+					}
+				});
+	}
+
+	private DryRunResult doDryRunStreaming(long scopeId, String mapperScript,
+			String reducerScript, String input, long sampleBytes)
+			throws MapReduceWSIException {
+		if (sampleBytes < 1) {
+			throw new IllegalArgumentException("|sampleBytes| must be positive");
+		}
+		final Properties config = getConfig();
+		sampleBytes = Math.min(sampleBytes, ConfigStub.getIntProperty(config,
+				"maxDryRunSampleBytes", 1048576));
+		final int timeoutSeconds = ConfigStub.getIntProperty(config,
+				"dryRunTimeoutSeconds", 30);
+		final int maxOutputBytes = ConfigStub.getIntProperty(config,
+				"maxDryRunOutputBytes", 65536);
+		// ulimit -f and -v count in blocks of 1024 bytes
+		final long maxFileBlocks = Math.max(sampleBytes
+				* DRY_RUN_FILE_SIZE_FACTOR, maxOutputBytes) / 1024 + 1;
+		final long maxMemoryBlocks = ConfigStub.getLongProperty(config,
+				"maxDryRunMemoryBytes", 1024 * 1024 * 1024) / 1024;
+		final int maxProcesses = ConfigStub.getIntProperty(config,
+				"maxDryRunProcesses", 1024);
+
+		// The scripts run on the remote host itself rather than on the
+		// cluster, so anything they do is bounded by the time limit and the
+		// file size, memory and process limits (enforced by ulimit). The
+		// input sample is the beginning of the (first) input file(s). All
+		// files are named after the operation, other dry runs in the same
+		// scope may be running at the same time.
+		final String localDir = getRemoteLocalDir(scopeId);
+		final String prefix = getOperationFileName("dryrun");
+		final String inputPath = resolveHDFSPath(scopeId, input);
+		final StringBuilder script = new StringBuilder();
+		script.append("#!/bin/bash\n");
+		script.append("cd ").append(localDir).append(" || exit 1\n");
+		script.append("p=").append(prefix).append('\n');
+		script.append("chmod +x $p.mapper $p.reducer\n");
+		script.append(String.format(
+				"if timeout %s hadoop fs -test -d %s; then src=%s; else src=%s; fi\n",
+				timeoutSeconds, escapeShellArgument(inputPath),
+				escapeShellArgument(inputPath + "/[!_.]*"),
+				escapeShellArgument(inputPath)));
+		script.append(String.format(
+				"timeout %s hadoop fs -cat \"$src\" 2> $p.fetch_stderr "
+						+ "| head -c %s > $p.input\n", timeoutSeconds,
+				sampleBytes));
+		// Once head has read enough, hadoop fails to write the rest. Only
+		// report errors from reading the input if there is no input.
+		script.append("if [ -s $p.input ]; then : > $p.stderr; "
+				+ "else cp $p.fetch_stderr $p.stderr; fi\n");
+		// The scripts run in a session and thus process group of their own,
+		// so any processes they leave behind (i.e. using nohup) can be killed
+		// along with them. So does the watchdog that enforces the time limit.
+		script.append(String.format(
+				"setsid bash -c 'ulimit -f %s; ulimit -v %s; ulimit -u %s; "
+						+ "set -o pipefail; ./$1.mapper < $1.input "
+						+ "| LC_ALL=C sort | ./$1.reducer' dryrun $p "
+						+ "< /dev/null > $p.output 2>> $p.stderr &\n",
+				maxFileBlocks, maxMemoryBlocks, maxProcesses));
+		script.append("pid=$!\n");
+		script.append(String.format(
+				"setsid bash -c 'sleep %s; touch $1.timed_out; "
+						+ "kill -TERM -- -$2; sleep 5; kill -KILL -- -$2' "
+						+ "watchdog $p $pid < /dev/null > /dev/null 2>&1 &\n",
+				timeoutSeconds));
+		script.append("watchdog=$!\n");
+		// Otherwise bash reports killing it on stderr
+		script.append("disown $watchdog\n");
+		script.append("wait $pid\n");
+		script.append("rc=$?\n");
+		script.append("kill -KILL -- -$pid -$watchdog 2> /dev/null\n");
+		script.append("if [ -e $p.timed_out ]; then rc=124; fi\n");
+		script.append("echo \"").append(DRY_RUN_STATUS_MARKER)
+				.append(" $rc $(wc -c < $p.input) $(wc -c < $p.output)")
+				.append(" $(wc -c < $p.stderr)\"\n");
+		script.append(String.format("head -c %s $p.output\n", maxOutputBytes));
+		script.append(String.format("head -c %s $p.stderr >&2\n",
+				maxOutputBytes));
+		script.append("rm -f $p.*\n");
+
+		final RemoteExecutor.Result result;
+		try {
+			final String fileName = localDir + "/" + prefix;
+			copyContentsToRemote(mapperScript, fileName + ".mapper");
+			copyContentsToRemote(reducerScript, fileName + ".reducer");
+			copyContentsToRemote(script.toString(), fileName + ".sh");
+			result = runRemote("bash " + fileName + ".sh");
+		} catch (MapReduceWSIException e) {
+			throw new MapReduceWSIException(
+					"Failed to dry run Streaming Mode scripts on the remote host",
+					e);
+		}
+		// The output of the scripts is on stdout following the status line,
+		// their stderr on stderr.
+		final String output = result.getStdout();
+		final String error = result.getStderr();
+		if (result.getExitCode() != 0) {
+			throw new MapReduceWSIException(String.format(
+					"Dry run script exited with code %s: %s",
+					result.getExitCode(), error));
 		}
+
+		final int newline = output.indexOf('\n');
+		final String[] status = (newline == -1 ? output : output.substring(0,
+				newline)).trim().split("\\s+");
+		if (status.length != 5 || !status[0].equals(DRY_RUN_STATUS_MARKER)) {
+			throw new MapReduceWSIException(
+					"Unexpected output from dry run script: " + output);
+		}
+		final int exitCode;
+		final long inputBytes;
+		final long outputBytes;
+		final long errorBytes;
+		try {
+			exitCode = Integer.parseInt(status[1]);
+			inputBytes = Long.parseLong(status[2]);
+			outputBytes = Long.parseLong(status[3]);
+			errorBytes = Long.parseLong(status[4]);
+		} catch (NumberFormatException e) {
+			throw new MapReduceWSIException(
+					"Unexpected output from dry run script: " + output, e);
+		}
+
+		// The script reports 124 (as timeout would) if the watchdog stopped
+		// the scripts
+		return new DryRunResult(inputBytes, exitCode, exitCode == 124,
+				outputBytes > maxOutputBytes || errorBytes > maxOutputBytes,
+				output.substring(newline + 1), error);
 	}
 
 	// Pattern to decompose a simple SQL statement into its primary
@@ -218,74 +870,804 @@ public class MapReduceWSIImpl implements MapReduceWSI {
 			Pattern.CASE_INSENSITIVE);
 
 	@Override
-	public void importIntoHDFS(long scopeId, String jdbcURI, String dbUser,
+	public void importIntoHDFS(final long scopeId, final String jdbcURI,
+			final String dbUser, final String dbCredentials,
+			final String query, final String partitionColumn,
+			final String destinationName) throws MapReduceWSIException {
+		runAsJob(scopeId, "importIntoHDFS",
+				new String[] { getHDFSDir(scopeId) + "/" + destinationName },
+				new JobBody<Void>() {
+					public Void run() throws MapReduceWSIException {
+						doImportIntoHDFS(scopeId, jdbcURI, dbUser,
+								dbCredentials, query, partitionColumn,
+								destinationName);
+						return null;
+					}
+				});
+	}
+
+	private void doImportIntoHDFS(long scopeId, String jdbcURI, String dbUser,
 			String dbCredentials, String query, String partitionColumn,
 			String destinationName) throws MapReduceWSIException {
 
-		if (partitionColumn.indexOf('.') == -1) {
-			throw new IllegalArgumentException(
-					"|partitionColumn| must be prefixed by table");
+		final String absoluteDestinationName = String.format("%s/%s",
+				getHDFSDir(scopeId), destinationName);
+		final String[] boundaries = getSplitBoundaries(jdbcURI, dbUser,
+				dbCredentials, query, partitionColumn);
+		if (boundaries.length > 0) {
+			doImportIntoHDFSInRanges(scopeId, jdbcURI, dbUser, dbCredentials,
+					query, partitionColumn, boundaries,
+					absoluteDestinationName);
+		} else {
+			try {
+				execRemote(buildSqoopImportCommand(jdbcURI, dbUser,
+						dbCredentials, query, partitionColumn,
+						absoluteDestinationName)
+						+ " 2>&1");
+			} catch (MapReduceWSIException e) {
+				throw new MapReduceWSIException(
+						"Failed to run import into HDFS remotely using sqoop", e);
+			}
+		}
+		compactIfFragmented(scopeId, destinationName);
+	}
+
+	// Determine the boundaries between |partitionColumn| ranges holding
+	// about the same number of rows of |query|, sorted ascending and without
+	// duplicates. Sqoop by itself splits [MIN, MAX] into equally wide ranges,
+	// which leaves a single mapper with most of the work if the column is
+	// skewed. Boundaries are cached per source table and column; an empty
+	// result means the import should be left to Sqoop.
+	private String[] getSplitBoundaries(String jdbcURI, String dbUser,
+			String dbCredentials, String query, String partitionColumn)
+			throws MapReduceWSIException {
+		final Properties config = getConfig();
+		final int splits = ConfigStub.getIntProperty(config,
+				"balancedImportSplits", 4);
+		if (splits < 2) {
+			return new String[0];
 		}
 
-		// TODO(acgessler) Replace this with a proper rewrite engine
 		final Matcher queryMatch = selectPattern.matcher(query);
 		if (!queryMatch.find()) {
 			throw new IllegalArgumentException("Unrecognized |query|");
 		}
 
-		// Sqoop requires WHERE/AND $CONDITIONS to be appended to the
-		// query so it can insert the partition condition.
-		final String fullQuery = String.format("%s %s $CONDITIONS", query,
-				(queryMatch.group(3).toUpperCase().startsWith("WHERE") ? "AND"
-						: "WHERE"));
-
-		// If no --boundary-query is given, Sqoop does a
-		// SELECT MIN(t1.<partitionColumn>), MAX(t1.<partitionColumn>)
-		// on the result of |escapedQuery|, causing it to fail if
-		// the selected columns do not include the partition column.
-		//
-		// Here we try to detect absence of the partition column in
-		// the SELECT clause and build an appropriate --boundary-query.
-		final String partitionColumnAfterPeriod = partitionColumn
-				.substring(partitionColumn.indexOf(".") + 1);
-
-		String boundaryQuery = query;
-		if (!Pattern.matches("(\\b|\\.)" + partitionColumnAfterPeriod
-				+ "\\b(?!\\s*AS)", queryMatch.group(1))) {
-			boundaryQuery = String.format("SELECT MIN(%s), MAX(%s) FROM %s %s",
-					partitionColumnAfterPeriod, partitionColumnAfterPeriod,
-					queryMatch.group(2), queryMatch.group(3));
+		final String key = String.format("%s|%s|%s|%s", jdbcURI,
+				queryMatch.group(2).trim() + " " + queryMatch.group(3).trim(),
+				partitionColumn, splits);
+		final SplitStatisticsCache cache = getSplitStatistics();
+		final long maxAgeMillis = ConfigStub.getIntProperty(config,
+				"splitStatisticsMaxAgeSeconds", 86400) * 1000L;
+		final String[] cached = cache.get(key, maxAgeMillis);
+		if (cached != null) {
+			return cached;
 		}
 
-		final String absoluteDestinationName = escapeShellArgument(String
-				.format("%s/%s", getHDFSDir(scopeId), destinationName));
-
-		final String escapedUserName = escapeShellArgument(dbUser);
-		final String escapedPassword = escapeShellArgument(dbCredentials);
-		final String escapedURI = escapeShellArgument(jdbcURI);
-		final String escapedFullQuery = escapeShellArgument(fullQuery);
-		final String escapedBoundaryQuery = escapeShellArgument(boundaryQuery);
+		// Let the source database compute the upper bound of each of
+		// |splits| equally populated tiles. This is a single sort on the
+		// database side and requires window functions (SQL:2003); for
+		// databases lacking them, sqoop eval fails and we fall back to
+		// Sqoop's own splitting.
+		final String where = queryMatch.group(3).trim();
+		final String quantileQuery = String.format(
+				"SELECT MAX(mapreduce_wsi_key) FROM (SELECT %s AS "
+						+ "mapreduce_wsi_key, NTILE(%s) OVER (ORDER BY %s) "
+						+ "AS mapreduce_wsi_tile FROM %s %s %s IS NOT NULL) "
+						+ "mapreduce_wsi_tiles GROUP BY mapreduce_wsi_tile "
+						+ "ORDER BY mapreduce_wsi_tile", partitionColumn,
+				splits, partitionColumn, queryMatch.group(2),
+				where.length() > 0 ? where + " AND" : "WHERE", partitionColumn);
+		final String output;
 		try {
-			execRemote(String.format(
-					"sqoop import --connect %s --username %s --password %s "
-							+ "--query %s --target-dir %s --split-by %s "
-							+ "--boundary-query %s", escapedURI,
-					escapedUserName, escapedPassword, escapedFullQuery,
-					absoluteDestinationName, partitionColumn,
-					escapedBoundaryQuery));
+			output = execRemote(String.format(
+					"sqoop eval --connect %s --username %s --password %s "
+							+ "--query %s", escapeShellArgument(jdbcURI),
+					escapeShellArgument(dbUser),
+					escapeShellArgument(dbCredentials),
+					escapeShellArgument(quantileQuery)));
 		} catch (MapReduceWSIException e) {
-			throw new MapReduceWSIException(
-					"Failed to run import into HDFS remotely using sqoop", e);
+			// Most likely the database lacks window functions, but it might
+			// as well be unreachable for the moment, so don't cache this.
+			getServletContext().log(
+					"Failed to sample partition column using sqoop, "
+							+ "leaving splitting to Sqoop", e);
+			return new String[0];
 		}
+
+		// The upper bound of the last tile is the maximum, which is not a
+		// boundary between ranges.
+		final List<String[]> rows = parseSqoopEvalRows(output);
+		final Set<String> boundaries = new LinkedHashSet<String>();
+		for (int i = 0; i < rows.size() - 1; ++i) {
+			boundaries.add(rows.get(i)[0]);
+		}
+		final String[] result = boundaries.toArray(new String[boundaries
+				.size()]);
+		cache.put(key, result);
+		return result;
 	}
 
-	@Override
-	public void exportToRDBMS(long scopeId, String jdbcURI, String dbUser,
-			String dbCredentials, String tableName, String sourceName)
+	// Marker printed by the range import script for each range, followed by
+	// the range index, sqoop's exit code, the YARN application of the import
+	// (or "-") and the last line of sqoop's output.
+	private static final String RANGE_RESULT_MARKER = "MAPREDUCE_WSI_RANGE";
+
+	// Numeric SQL literals, which can be used as boundaries verbatim
+	private static final Pattern numericLiteralPattern = Pattern
+			.compile("-?[0-9]+(\\.[0-9]+)?([eE][-+]?[0-9]+)?");
+
+	// Import |query| as one single-mapper sqoop import per range of
+	// |partitionColumn| between two consecutive |boundaries|, all running
+	// concurrently. The lowest and highest range are open so rows outside
+	// the sampled (possibly stale) boundaries are imported all the same, and
+	// a further range takes rows with NULL keys (as Sqoop does). Like a
+	// plain sqoop import, this fails if the destination exists.
+	private void doImportIntoHDFSInRanges(long scopeId, String jdbcURI,
+			String dbUser, String dbCredentials, String query,
+			String partitionColumn, String[] boundaries,
+			String absoluteDestinationName) throws MapReduceWSIException {
+
+		final String[] literals = new String[boundaries.length];
+		for (int i = 0; i < boundaries.length; ++i) {
+			literals[i] = numericLiteralPattern.matcher(boundaries[i])
+					.matches() ? boundaries[i] : String.format("'%s'",
+					boundaries[i].replace("'", "''"));
+		}
+		final List<String> conditions = new ArrayList<String>();
+		conditions.add(String.format("%s <= %s", partitionColumn, literals[0]));
+		for (int i = 1; i < literals.length; ++i) {
+			conditions.add(String.format("%s > %s AND %s <= %s",
+					partitionColumn, literals[i - 1], partitionColumn,
+					literals[i]));
+		}
+		conditions.add(String.format("%s > %s", partitionColumn,
+				literals[literals.length - 1]));
+		conditions.add(String.format("%s IS NULL", partitionColumn));
+
+		final Matcher queryMatch = selectPattern.matcher(query);
+		if (!queryMatch.find()) {
+			throw new IllegalArgumentException("Unrecognized |query|");
+		}
+		final boolean hasWhere = queryMatch.group(3).toUpperCase()
+				.startsWith("WHERE");
+
+		final String escapedDestinationName = escapeShellArgument(absoluteDestinationName);
+		if (runRemote("hadoop fs -test -e " + escapedDestinationName)
+				.getExitCode() == 0) {
+			throw new MapReduceWSIException(String.format(
+					"Failed to run import into HDFS, %s already exists",
+					absoluteDestinationName));
+		}
+
+		// Each range is imported into a hidden directory below a staging
+		// directory next to the destination, with file names unique across
+		// ranges, so that all files can be moved into the staging directory
+		// in one go afterwards. The staging directory is named after the
+		// operation and only renamed to the destination once complete, so
+		// this never deletes anything it did not create.
+		final int slash = absoluteDestinationName.lastIndexOf('/');
+		final String stagingName = String.format("%s/.importing_%s",
+				absoluteDestinationName.substring(0, slash),
+				getOperationFileName(absoluteDestinationName
+						.substring(slash + 1)));
+		final String escapedStagingName = escapeShellArgument(stagingName);
+		final String localDir = getRemoteLocalDir(scopeId);
+		final StringBuilder script = new StringBuilder();
+		script.append("#!/bin/sh\n");
+		script.append("log=").append(localDir).append('/')
+				.append(getOperationFileName("import_range"))
+				.append("_$1.log\n");
+		script.append("case \"$1\" in\n");
+		for (int i = 0; i < conditions.size(); ++i) {
+			final String rangeQuery = String.format("%s %s (%s) AND $CONDITIONS",
+					query, hasWhere ? "AND" : "WHERE", conditions.get(i));
+			script.append(i).append(") ");
+			script.append(String.format(
+					"sqoop import -D mapreduce.output.basename=part-%s "
+							+ "--connect %s --username %s --password %s "
+							+ "--query %s --target-dir %s -m 1", i,
+					escapeShellArgument(jdbcURI), escapeShellArgument(dbUser),
+					escapeShellArgument(dbCredentials),
+					escapeShellArgument(rangeQuery),
+					escapeShellArgument(stagingName + "/.range_" + i)));
+			script.append(" > \"$log\" 2>&1 ;;\n");
+		}
+		script.append("esac\n");
+		script.append("rc=$?\n");
+		script.append("app=$(grep -o 'application_[0-9]*_[0-9]*' \"$log\" | head -n 1)\n");
+		script.append("echo \"").append(RANGE_RESULT_MARKER)
+				.append(" $1 $rc ${app:--} $(tail -n 1 \"$log\")\"\n");
+
+		final String scriptDestName = String.format("%s/%s.sh", localDir,
+				getOperationFileName("import_ranges"));
+		final String output;
+		try {
+			copyContentsToRemote(script.toString(), scriptDestName);
+			output = execRemote(String.format(
+					"seq 0 %s | xargs -n 1 -P %s sh %s; rm -f %s",
+					conditions.size() - 1, conditions.size(), scriptDestName,
+					scriptDestName));
+		} catch (MapReduceWSIException e) {
+			deleteStagingDirectory(stagingName);
+			throw new MapReduceWSIException(
+					"Failed to run import into HDFS remotely using sqoop", e);
+		}
+
+		int succeeded = 0;
+		String error = "No result reported by remote host";
+		for (String line : output.split("\n")) {
+			line = line.trim();
+			if (!line.startsWith(RANGE_RESULT_MARKER + " ")) {
+				continue;
+			}
+			final String[] parts = line.split(" ", 5);
+			if (parts.length > 2 && parts[2].equals("0")) {
+				++succeeded;
+			} else {
+				error = line;
+			}
+		}
+
+		if (succeeded == conditions.size()) {
+			try {
+				// -mv would move the staging directory into a destination
+				// created in the meantime
+				execRemote(String.format(
+						"hadoop fs -mv %s %s && hadoop fs -rm -r -skipTrash %s "
+								+ "&& ! hadoop fs -test -e %s "
+								+ "&& hadoop fs -mv %s %s",
+						escapeShellArgument(stagingName + "/.range_*/part-*"),
+						escapedStagingName,
+						escapeShellArgument(stagingName + "/.range_*"),
+						escapedDestinationName, escapedStagingName,
+						escapedDestinationName));
+				return;
+			} catch (MapReduceWSIException e) {
+				deleteStagingDirectory(stagingName);
+				throw new MapReduceWSIException(
+						"Failed to assemble imported ranges in HDFS", e);
+			}
+		}
+		deleteStagingDirectory(stagingName);
+		throw new MapReduceWSIException(String.format(
+				"Failed to run import into HDFS remotely using sqoop, %s of "
+						+ "%s ranges failed: %s", conditions.size() - succeeded,
+				conditions.size(), error));
+	}
+
+	// Remove the staging directory of a failed range import. Failures are
+	// logged only, so they do not hide the reason the import failed.
+	private void deleteStagingDirectory(String stagingName) {
+		try {
+			execRemote("hadoop fs -rm -r -f -skipTrash "
+					+ escapeShellArgument(stagingName));
+		} catch (MapReduceWSIException e) {
+			getServletContext().log(
+					"Failed to delete staging directory " + stagingName, e);
+		}
+	}
+
+	@Override
+	public long importIntoHDFSAsync(final long scopeId, final String jdbcURI,
+			final String dbUser, final String dbCredentials,
+			final String query, final String partitionColumn,
+			final String destinationName, String callbackURL)
 			throws MapReduceWSIException {
+		requireScope(scopeId);
+		return getOperations().submit("importIntoHDFS", scopeId,
+				new String[] { getHDFSDir(scopeId) + "/" + destinationName },
+				callbackURL, new OperationExecutor.Operation() {
+					public void run(MapReduceWSI wsi)
+							throws MapReduceWSIException {
+						wsi.importIntoHDFS(scopeId, jdbcURI, dbUser,
+								dbCredentials, query, partitionColumn,
+								destinationName);
+					}
+				});
+	}
+
+	// Prefix of the per-table result lines printed by the batch import
+	// script, followed by the table index, sqoop's exit code, the duration in
+	// seconds and the last line of sqoop's output.
+	private static final String BATCH_RESULT_MARKER = "MAPREDUCE_WSI_RESULT";
+
+	@Override
+	public ImportResult[] importIntoHDFSBatch(final long scopeId,
+			final String jdbcURI, final String dbUser,
+			final String dbCredentials, final ImportSpec[] imports,
+			final int parallelism) throws MapReduceWSIException {
+		final String[] artifacts = new String[imports.length];
+		for (int i = 0; i < imports.length; ++i) {
+			artifacts[i] = getHDFSDir(scopeId) + "/"
+					+ imports[i].getDestinationName();
+		}
+		return runAsJob(scopeId, "importIntoHDFSBatch", artifacts,
+				new JobBody<ImportResult[]>() {
+					public ImportResult[] run() throws MapReduceWSIException {
+						return doImportIntoHDFSBatch(scopeId, jdbcURI, dbUser,
+								dbCredentials, imports, parallelism);
+					}
+				});
+	}
+
+	private ImportResult[] doImportIntoHDFSBatch(long scopeId, String jdbcURI,
+			String dbUser, String dbCredentials, ImportSpec[] imports,
+			int parallelism) throws MapReduceWSIException {
+
+		final int maxParallelism = ConfigStub.getIntProperty(getConfig(),
+				"maxParallelImports", 4);
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("|parallelism| must be positive");
+		}
+		parallelism = Math.min(parallelism, maxParallelism);
+		if (imports.length == 0) {
+			return new ImportResult[0];
+		}
+
+		// Instead of issuing the imports concurrently from here, generate a
+		// script that runs all imports on the remote host and let xargs bound
+		// the number of concurrent sqoop jobs. This means only a single SSH
+		// round trip for the entire batch.
+		//
+		// Invoked with a table index, the script runs that table's import
+		// and prints a result line. Building all commands up-front also
+		// rejects malformed specs before any import is started.
+		final String localDir = getRemoteLocalDir(scopeId);
+		final StringBuilder script = new StringBuilder();
+		script.append("#!/bin/sh\n");
+		script.append("log=").append(localDir).append('/')
+				.append(getOperationFileName("import")).append("_$1.log\n");
+		script.append("start=$(date +%s)\n");
+		script.append("case \"$1\" in\n");
+		for (int i = 0; i < imports.length; ++i) {
+			final ImportSpec spec = imports[i];
+			final String absoluteDestinationName = String.format("%s/%s",
+					getHDFSDir(scopeId), spec.getDestinationName());
+			script.append(i).append(") ");
+			script.append(buildSqoopImportCommand(jdbcURI, dbUser,
+					dbCredentials, spec.getQuery(), spec.getPartitionColumn(),
+					absoluteDestinationName));
+			script.append(" > \"$log\" 2>&1 ;;\n");
+		}
+		script.append("esac\n");
+		script.append("rc=$?\n");
+		script.append("echo \"").append(BATCH_RESULT_MARKER)
+				.append(" $1 $rc $(( $(date +%s) - start )) ")
+				.append("$(tail -n 1 \"$log\")\"\n");
+
+		final String scriptDestName = String.format("%s/%s.sh", localDir,
+				getOperationFileName("import_batch"));
+		final String output;
+		try {
+			final File scriptFile = writeToTemporaryFile(script.toString());
+			try {
+				copyToRemote(scriptFile.getAbsolutePath(), scriptDestName);
+			} finally {
+				scriptFile.delete();
+			}
+			output = execRemote(String.format(
+					"seq 0 %s | xargs -n 1 -P %s sh %s; rm -f %s",
+					imports.length - 1, parallelism, scriptDestName,
+					scriptDestName));
+		} catch (IOException e) {
+			throw new MapReduceWSIException(
+					"Failed to write batch import script to (local) temporary file",
+					e);
+		} catch (MapReduceWSIException e) {
+			throw new MapReduceWSIException(
+					"Failed to run batch import into HDFS remotely using sqoop",
+					e);
+		}
+
+		// Imports for which no result line shows up are reported as failed
+		final ImportResult[] results = new ImportResult[imports.length];
+		for (int i = 0; i < imports.length; ++i) {
+			results[i] = new ImportResult(imports[i].getDestinationName(),
+					false, 0, "No result reported by remote host");
+		}
+		for (String line : output.split("\n")) {
+			line = line.trim();
+			if (!line.startsWith(BATCH_RESULT_MARKER + " ")) {
+				continue;
+			}
+			final String[] parts = line.split(" ", 5);
+			final int index;
+			final int exitCode;
+			final long durationSeconds;
+			try {
+				index = Integer.parseInt(parts[1]);
+				exitCode = Integer.parseInt(parts[2]);
+				durationSeconds = Long.parseLong(parts[3]);
+			} catch (RuntimeException e) {
+				continue;
+			}
+			if (index < 0 || index >= results.length) {
+				continue;
+			}
+			final ImportResult result = results[index];
+			result.setSucceeded(exitCode == 0);
+			result.setDurationMillis(durationSeconds * 1000L);
+			result.setError(exitCode == 0 ? null : String.format(
+					"sqoop exited with code %s (%s)", exitCode,
+					parts.length > 4 ? parts[4] : ""));
+		}
+
+		for (ImportResult result : results) {
+			if (result.isSucceeded()) {
+				compactIfFragmented(scopeId, result.getDestinationName());
+			}
+		}
+		return results;
+	}
+
+	// Build the command line for a sqoop import of |query| into the absolute
+	// HDFS path |absoluteDestinationName|. See importIntoHDFS() for the
+	// requirements on |query| and |partitionColumn|.
+	private String buildSqoopImportCommand(String jdbcURI, String dbUser,
+			String dbCredentials, String query, String partitionColumn,
+			String absoluteDestinationName) {
+
+		if (partitionColumn.indexOf('.') == -1) {
+			throw new IllegalArgumentException(
+					"|partitionColumn| must be prefixed by table");
+		}
+
+		// TODO(acgessler) Replace this with a proper rewrite engine
+		final Matcher queryMatch = selectPattern.matcher(query);
+		if (!queryMatch.find()) {
+			throw new IllegalArgumentException("Unrecognized |query|");
+		}
+
+		// Sqoop requires WHERE/AND $CONDITIONS to be appended to the
+		// query so it can insert the partition condition.
+		final String fullQuery = String.format("%s %s $CONDITIONS", query,
+				(queryMatch.group(3).toUpperCase().startsWith("WHERE") ? "AND"
+						: "WHERE"));
 
-		final String absoluteSourceName = escapeShellArgument(String.format(
-				"%s/%s", getHDFSDir(scopeId), sourceName));
+		// If no --boundary-query is given, Sqoop does a
+		// SELECT MIN(t1.<partitionColumn>), MAX(t1.<partitionColumn>)
+		// on the result of |escapedQuery|, causing it to fail if
+		// the selected columns do not include the partition column.
+		//
+		// Here we try to detect absence of the partition column in
+		// the SELECT clause and build an appropriate --boundary-query.
+		final String partitionColumnAfterPeriod = partitionColumn
+				.substring(partitionColumn.indexOf(".") + 1);
+
+		String boundaryQuery = query;
+		if (!Pattern.matches("(\\b|\\.)" + partitionColumnAfterPeriod
+				+ "\\b(?!\\s*AS)", queryMatch.group(1))) {
+			boundaryQuery = String.format("SELECT MIN(%s), MAX(%s) FROM %s %s",
+					partitionColumnAfterPeriod, partitionColumnAfterPeriod,
+					queryMatch.group(2), queryMatch.group(3));
+		}
+
+		final String escapedDestinationName = escapeShellArgument(absoluteDestinationName);
+		final String escapedUserName = escapeShellArgument(dbUser);
+		final String escapedPassword = escapeShellArgument(dbCredentials);
+		final String escapedURI = escapeShellArgument(jdbcURI);
+		final String escapedFullQuery = escapeShellArgument(fullQuery);
+		final String escapedBoundaryQuery = escapeShellArgument(boundaryQuery);
+		return String.format(
+				"sqoop import --connect %s --username %s --password %s "
+						+ "--query %s --target-dir %s --split-by %s "
+						+ "--boundary-query %s", escapedURI, escapedUserName,
+				escapedPassword, escapedFullQuery, escapedDestinationName,
+				partitionColumn, escapedBoundaryQuery);
+	}
+
+	// Pattern to validate shared dataset names. They end up in HDFS paths, so
+	// be conservative.
+	private static final Pattern datasetNamePattern = Pattern
+			.compile("[A-Za-z0-9_\\-]+");
+
+	@Override
+	public String importSharedDataset(final String datasetName,
+			final String jdbcURI, final String dbUser,
+			final String dbCredentials, final String query,
+			final String partitionColumn, final long maxAgeSeconds)
+			throws MapReduceWSIException {
+
+		if (!datasetNamePattern.matcher(datasetName).matches()) {
+			throw new IllegalArgumentException("Invalid |datasetName|");
+		}
+		return runTraced("importSharedDataset", new JobBody<String>() {
+			public String run() throws MapReduceWSIException {
+				return doImportSharedDataset(datasetName, jdbcURI, dbUser,
+						dbCredentials, query, partitionColumn, maxAgeSeconds);
+			}
+		});
+	}
+
+	private String doImportSharedDataset(String datasetName, String jdbcURI,
+			String dbUser, String dbCredentials, String query,
+			String partitionColumn, long maxAgeSeconds)
+			throws MapReduceWSIException {
+
+		final DatasetCatalog catalog = getCatalog();
+
+		// Serialize imports of the same dataset so that concurrent clients
+		// asking for the same table only hit the source DB once.
+		synchronized (catalog.getImportLock(datasetName)) {
+			final DatasetCatalog.Dataset existing = catalog.get(datasetName);
+			if (existing != null
+					&& System.currentTimeMillis() - existing.getValidatedAt() < maxAgeSeconds * 1000L) {
+				return existing.getHDFSPath();
+			}
+
+			// Either there is no copy yet or its TTL expired. In the latter
+			// case, the copy is still good if the source table did not change
+			// (as far as row count and maximum partition key are concerned).
+			final String fingerprint = querySourceFingerprint(jdbcURI, dbUser,
+					dbCredentials, query, partitionColumn);
+			if (existing != null
+					&& existing.getFingerprint().equals(fingerprint)) {
+				try {
+					catalog.markValidated(existing);
+				} catch (IOException e) {
+					throw new MapReduceWSIException(
+							"Failed to record validating shared dataset", e);
+				}
+				return existing.getHDFSPath();
+			}
+
+			final long version = catalog.allocateVersion();
+			final String hdfsPath = String.format("%s/%s/v%s",
+					getSharedHDFSDir(), datasetName, version);
+			try {
+				execRemote(buildSqoopImportCommand(jdbcURI, dbUser,
+						dbCredentials, query, partitionColumn, hdfsPath)
+						+ " 2>&1");
+
+				// Scopes get read-only access. Since all jobs run as the
+				// same user, this relies on HDFS also enforcing owner bits.
+				hdfsChmod("a-w", hdfsPath);
+			} catch (MapReduceWSIException e) {
+				// The version is new, so nothing else refers to the folder
+				try {
+					hdfsDelete(hdfsPath);
+				} catch (MapReduceWSIException deleteException) {
+					getServletContext().log(
+							"Failed to delete partial shared dataset "
+									+ hdfsPath, deleteException);
+				}
+				throw new MapReduceWSIException(
+						"Failed to import shared dataset remotely using sqoop",
+						e);
+			}
+
+			try {
+				deleteDatasets(catalog.publish(new DatasetCatalog.Dataset(
+						datasetName, version, hdfsPath, fingerprint)));
+			} catch (IOException e) {
+				throw new MapReduceWSIException(
+						"Failed to record shared dataset", e);
+			}
+			return hdfsPath;
+		}
+	}
+
+	@Override
+	public String attachSharedDataset(final long scopeId,
+			final String datasetName) throws MapReduceWSIException {
+		requireScope(scopeId);
+		return runTraced("attachSharedDataset", new JobBody<String>() {
+			public String run() throws MapReduceWSIException {
+				return doAttachSharedDataset(scopeId, datasetName);
+			}
+		});
+	}
+
+	private String doAttachSharedDataset(long scopeId, String datasetName)
+			throws MapReduceWSIException {
+		final DatasetCatalog.Dataset dataset;
+		try {
+			dataset = getCatalog().attach(scopeId, datasetName);
+		} catch (IOException e) {
+			throw new MapReduceWSIException(
+					"Failed to record attaching shared dataset", e);
+		}
+		if (dataset == null) {
+			throw new MapReduceWSIException("No shared dataset named "
+					+ datasetName);
+		}
+		return dataset.getHDFSPath();
+	}
+
+	@Override
+	public void detachSharedDataset(final long scopeId,
+			final String datasetName) throws MapReduceWSIException {
+		runTraced("detachSharedDataset", new JobBody<Void>() {
+			public Void run() throws MapReduceWSIException {
+				doDetachSharedDataset(scopeId, datasetName);
+				return null;
+			}
+		});
+	}
+
+	private void doDetachSharedDataset(long scopeId, String datasetName)
+			throws MapReduceWSIException {
+		try {
+			deleteDatasets(getCatalog().detach(scopeId, datasetName));
+		} catch (IOException e) {
+			throw new MapReduceWSIException(
+					"Failed to record detaching shared dataset", e);
+		}
+	}
+
+	// Determine row count and maximum partition key of the source table(s)
+	// selected by |query|. This is the cheapest way to detect changes to
+	// append-mostly tables without transferring any actual data.
+	private String querySourceFingerprint(String jdbcURI, String dbUser,
+			String dbCredentials, String query, String partitionColumn)
+			throws MapReduceWSIException {
+		final Matcher queryMatch = selectPattern.matcher(query);
+		if (!queryMatch.find()) {
+			throw new IllegalArgumentException("Unrecognized |query|");
+		}
+
+		final String fingerprintQuery = String.format(
+				"SELECT COUNT(*), MAX(%s) FROM %s %s", partitionColumn,
+				queryMatch.group(2), queryMatch.group(3));
+		final String output;
+		try {
+			output = execRemote(String.format(
+					"sqoop eval --connect %s --username %s --password %s "
+							+ "--query %s", escapeShellArgument(jdbcURI),
+					escapeShellArgument(dbUser),
+					escapeShellArgument(dbCredentials),
+					escapeShellArgument(fingerprintQuery)));
+		} catch (MapReduceWSIException e) {
+			throw new MapReduceWSIException(
+					"Failed to query source table statistics using sqoop", e);
+		}
+
+		final List<String[]> rows = parseSqoopEvalRows(output);
+		if (rows.isEmpty()) {
+			throw new MapReduceWSIException(
+					"Unexpected output from sqoop eval: " + output);
+		}
+		final String[] row = rows.get(0);
+		return String.format("%s/%s", row[0], row.length > 1 ? row[1] : "");
+	}
+
+	// Parse the ASCII table printed by `sqoop eval` into its data rows (the
+	// header row is skipped).
+	private static List<String[]> parseSqoopEvalRows(String output) {
+		final List<String[]> rows = new ArrayList<String[]>();
+		boolean sawHeader = false;
+		for (String line : output.split("\n")) {
+			line = line.trim();
+			if (!line.startsWith("|")) {
+				continue;
+			}
+			if (!sawHeader) {
+				sawHeader = true;
+				continue;
+			}
+			final String[] cells = line.substring(1).split("\\|");
+			for (int i = 0; i < cells.length; ++i) {
+				cells[i] = cells[i].trim();
+			}
+			rows.add(cells);
+		}
+		return rows;
+	}
+
+	// Delete the HDFS data of shared dataset versions that are no longer used
+	private void deleteDatasets(List<DatasetCatalog.Dataset> datasets)
+			throws MapReduceWSIException {
+		final DatasetCatalog catalog = getCatalog();
+		MapReduceWSIException failure = null;
+		for (DatasetCatalog.Dataset dataset : datasets) {
+			final String path = dataset.getHDFSPath();
+			try {
+				hdfsChmod("u+w", path);
+				hdfsDelete(path);
+			} catch (MapReduceWSIException e) {
+				// Retried the next time versions are retired
+				catalog.deleteFailed(dataset);
+				failure = new MapReduceWSIException(
+						"Failed to delete retired shared dataset", e);
+				continue;
+			}
+			try {
+				catalog.deleted(dataset);
+			} catch (IOException e) {
+				failure = new MapReduceWSIException(
+						"Failed to record deleting shared dataset", e);
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	// Map a (scope-relative) HDFS name to an absolute HDFS path. Names of
+	// shared datasets attached to the scope map to the shared copy.
+	private String resolveHDFSPath(long scopeId, String name) {
+		final DatasetCatalog.Dataset dataset = getCatalog().findAttached(
+				scopeId, name);
+		if (dataset != null) {
+			return dataset.getHDFSPath();
+		}
+		return String.format("%s/%s", getHDFSDir(scopeId), name);
+	}
+
+	@Override
+	public void putIntoHDFS(final long scopeId, final String srcFileName,
+			final String destinationName) throws MapReduceWSIException {
+		runAsJob(scopeId, "putIntoHDFS",
+				new String[] { getHDFSDir(scopeId) + "/" + destinationName },
+				new JobBody<Void>() {
+					public Void run() throws MapReduceWSIException {
+						doPutIntoHDFS(scopeId, srcFileName, destinationName);
+						return null;
+					}
+				});
+	}
+
+	private void doPutIntoHDFS(long scopeId, String srcFileName,
+			String destinationName) throws MapReduceWSIException {
+		// Only files uploaded to the scope may be put, anything else on the
+		// service host (such as its configuration) must stay out of reach of
+		// clients.
+		final File uploadDir = ConfigStub.getUploadDir(getConfig(), scopeId);
+		File srcFile = new File(srcFileName);
+		if (!srcFile.isAbsolute()) {
+			srcFile = new File(uploadDir, srcFileName);
+		}
+		try {
+			if (!srcFile.getCanonicalPath().startsWith(
+					uploadDir.getCanonicalPath() + File.separator)) {
+				throw new IllegalArgumentException(
+						"|srcFileName| must name a file uploaded to the scope");
+			}
+		} catch (IOException e) {
+			throw new MapReduceWSIException("Failed to resolve "
+					+ srcFileName, e);
+		}
+		final String fileName = srcFile.getName();
+		final String localName = String.format("%s/put_%s",
+				getRemoteLocalDir(scopeId), fileName);
+		final String absoluteDestinationName = String.format("%s/%s",
+				getHDFSDir(scopeId), destinationName);
+		try {
+			copyToRemote(srcFile.getAbsolutePath(), localName);
+			execRemote(String.format(
+					"hadoop fs -mkdir -p %s && hadoop fs -put -f %s %s; "
+							+ "rc=$?; rm -f %s; exit $rc",
+					escapeShellArgument(absoluteDestinationName),
+					escapeShellArgument(localName),
+					escapeShellArgument(absoluteDestinationName + "/"
+							+ fileName), escapeShellArgument(localName)));
+		} catch (MapReduceWSIException e) {
+			throw new MapReduceWSIException(String.format(
+					"Failed to put %s into HDFS", fileName), e);
+		}
+	}
+
+	@Override
+	public void exportToRDBMS(final long scopeId, final String jdbcURI,
+			final String dbUser, final String dbCredentials,
+			final String tableName, final String sourceName)
+			throws MapReduceWSIException {
+		runAsJob(scopeId, "exportToRDBMS", new String[0], new JobBody<Void>() {
+			public Void run() throws MapReduceWSIException {
+				doExportToRDBMS(scopeId, jdbcURI, dbUser, dbCredentials,
+						tableName, sourceName);
+				return null;
+			}
+		});
+	}
+
+	private void doExportToRDBMS(long scopeId, String jdbcURI, String dbUser,
+			String dbCredentials, String tableName, String sourceName)
+			throws MapReduceWSIException {
+
+		final String absoluteSourceName = escapeShellArgument(resolveHDFSPath(
+				scopeId, sourceName));
 
 		final String escapedUserName = escapeShellArgument(dbUser);
 		final String escapedPassword = escapeShellArgument(dbCredentials);
@@ -295,7 +1677,7 @@ public class MapReduceWSIImpl implements MapReduceWSI {
 		try {
 			execRemote(String
 					.format("sqoop export --connect %s --username %s --password %s "
-							+ "--table %s --export-dir %s --fields-terminated-by '\\t'",
+							+ "--table %s --export-dir %s --fields-terminated-by '\\t' 2>&1",
 							escapedURI, escapedUserName, escapedPassword,
 							escapedTableName, absoluteSourceName));
 		} catch (MapReduceWSIException e) {
@@ -304,9 +1686,187 @@ public class MapReduceWSIImpl implements MapReduceWSI {
 		}
 	}
 
+	// Marker printed by the compaction script once it succeeded
+	private static final String COMPACTION_DONE_MARKER = "MAPREDUCE_WSI_COMPACTED";
+
+	@Override
+	public CompactionResult compact(final long scopeId, final String name,
+			final long targetFileSize, final boolean compress)
+			throws MapReduceWSIException {
+		return runAsJob(scopeId, "compact", new String[] { getHDFSDir(scopeId)
+				+ "/" + name }, new JobBody<CompactionResult>() {
+			public CompactionResult run() throws MapReduceWSIException {
+				return doCompact(scopeId, name, targetFileSize, compress);
+			}
+		});
+	}
+
+	private CompactionResult doCompact(long scopeId, String name,
+			long targetFileSize, boolean compress)
+			throws MapReduceWSIException {
+		if (targetFileSize < 1) {
+			throw new IllegalArgumentException(
+					"|targetFileSize| must be positive");
+		}
+		if (getCatalog().findAttached(scopeId, name) != null) {
+			throw new IllegalArgumentException(
+					"Shared datasets are read-only and cannot be compacted");
+		}
+
+		final String path = String.format("%s/%s", getHDFSDir(scopeId), name);
+		final long[] before = hdfsContentSummary(path);
+		if (before == null) {
+			throw new MapReduceWSIException("No dataset named " + name);
+		}
+
+		// Concatenate all files and cut the result into files of at most
+		// |targetFileSize| bytes without splitting lines. The data passes
+		// through the remote host, which is fine for the many small files
+		// this is meant for. The new files are written next to the dataset
+		// (hidden from input formats by the leading dot) and only swapped
+		// in once complete. -text (rather than -cat) transparently
+		// decompresses files compacted before.
+		//
+		// The swap takes two renames. If a previous compaction was
+		// interrupted in between, its backup of the dataset is the only copy
+		// and is restored first. Its backup is only deleted if the dataset
+		// exists, i.e. if the swap was complete. A rename that fails is
+		// rolled back, and only folders created by this operation are
+		// deleted without further checks.
+		final String localDir = getRemoteLocalDir(scopeId);
+		final String operationId = String.valueOf(currentTrace.get()
+				.getOperationId());
+		final StringBuilder script = new StringBuilder();
+		script.append("#!/bin/bash\n");
+		script.append("set -o pipefail\n");
+		script.append("src=").append(escapeShellArgument(path)).append('\n');
+		// Folders holding the new files and the backups of the dataset of
+		// each compaction, by operation ID
+		script.append("destDir=").append(
+				escapeShellArgument(String.format("%s/.compacting_%s",
+						getHDFSDir(scopeId), name))).append('\n');
+		script.append("oldDir=").append(
+				escapeShellArgument(String.format("%s/.compacted_%s",
+						getHDFSDir(scopeId), name))).append('\n');
+		script.append("export dest=\"$destDir/").append(operationId)
+				.append("\"\n");
+		script.append("old=\"$oldDir/").append(operationId).append("\"\n");
+		script.append("for stale in $(hadoop fs -ls -d \"$oldDir/*\" "
+				+ "\"$destDir/*\" 2> /dev/null | awk '/^[d-]/ { print $NF }'); do\n");
+		script.append("  case \"$stale\" in\n");
+		script.append("  \"$oldDir\"/*)\n");
+		script.append("    if hadoop fs -test -e \"$src\"; then\n");
+		script.append("      hadoop fs -rm -r -skipTrash \"$stale\" || exit 1\n");
+		script.append("    else\n");
+		script.append("      hadoop fs -mv \"$stale\" \"$src\" || exit 1\n");
+		script.append("    fi ;;\n");
+		script.append("  *) hadoop fs -rm -r -skipTrash \"$stale\" || exit 1 ;;\n");
+		script.append("  esac\n");
+		script.append("done\n");
+		script.append("hadoop fs -test -d \"$src\" || exit 1\n");
+		script.append("hadoop fs -mkdir -p \"$destDir\" \"$oldDir\" "
+				+ "&& hadoop fs -mkdir \"$dest\" || exit 1\n");
+		script.append(String.format(
+				"if ! hadoop fs -text \"$src/[!_.]*\" | split -d -a 5 -C %s "
+						+ "--filter='%shadoop fs -put - \"$dest/$FILE%s\"' "
+						+ "- part-c- || ! hadoop fs -mv \"$src\" \"$old\"; then\n",
+				targetFileSize, compress ? "gzip -c | " : "",
+				compress ? ".gz" : ""));
+		script.append("  hadoop fs -rm -r -skipTrash \"$dest\"\n");
+		script.append("  exit 1\n");
+		script.append("fi\n");
+		// Keep the job's success marker, which readers may check for
+		script.append("if hadoop fs -test -e \"$old/_SUCCESS\"; then\n");
+		script.append("  hadoop fs -touchz \"$dest/_SUCCESS\"\n");
+		script.append("fi\n");
+		script.append("if ! hadoop fs -mv \"$dest\" \"$src\"; then\n");
+		script.append("  hadoop fs -mv \"$old\" \"$src\" "
+				+ "&& hadoop fs -rm -r -skipTrash \"$dest\"\n");
+		script.append("  exit 1\n");
+		script.append("fi\n");
+		// If this fails, the next compaction removes the backup
+		script.append("hadoop fs -rm -r -skipTrash \"$old\"\n");
+		script.append("hadoop fs -rmdir --ignore-fail-on-non-empty "
+				+ "\"$destDir\" \"$oldDir\"\n");
+		script.append("echo ").append(COMPACTION_DONE_MARKER).append('\n');
+
+		final String scriptDestName = String.format("%s/%s.sh", localDir,
+				getOperationFileName("compact"));
+		final String output;
+		// Renames of concurrent compactions of the same dataset must not
+		// interleave
+		synchronized (getCompactionLock(path)) {
+			try {
+				copyContentsToRemote(script.toString(), scriptDestName);
+				output = execRemote(String.format(
+						"bash %s 2>&1; rc=$?; rm -f %s; exit $rc",
+						scriptDestName, scriptDestName));
+			} catch (MapReduceWSIException e) {
+				throw new MapReduceWSIException("Failed to compact " + name, e);
+			}
+		}
+		if (!output.contains(COMPACTION_DONE_MARKER)) {
+			throw new MapReduceWSIException(String.format(
+					"Failed to compact %s: %s", name, output));
+		}
+
+		final long[] after = hdfsContentSummary(path);
+		return new CompactionResult(before[1], after == null ? 0 : after[1],
+				before[0], after == null ? 0 : after[0]);
+	}
+
+	// Locks serializing compactions per HDFS path
+	private static final Object[] compactionLocks = new Object[64];
+	static {
+		for (int i = 0; i < compactionLocks.length; ++i) {
+			compactionLocks[i] = new Object();
+		}
+	}
+
+	// Get the lock for |path|. Locks are shared by paths with the same hash,
+	// so their number stays bounded.
+	private static Object getCompactionLock(String path) {
+		return compactionLocks[(path.hashCode() & Integer.MAX_VALUE)
+				% compactionLocks.length];
+	}
+
+	// Compact dataset |name| in scope |scopeId| if it consists of more than
+	// the configured number of files that are smaller than the target file
+	// size on average. Larger datasets are left to explicit compact() calls,
+	// as all data passes through the remote host while the caller waits.
+	// Failures are logged only, as the dataset is still usable as it is.
+	private void compactIfFragmented(long scopeId, String name) {
+		final Properties config = getConfig();
+		final int threshold = ConfigStub.getIntProperty(config,
+				"compactionFileCountThreshold", 1000);
+		if (threshold <= 0) {
+			return;
+		}
+		final long targetFileSize = ConfigStub.getLongProperty(config,
+				"compactionTargetFileBytes", 128 * 1024 * 1024);
+		final long maxBytes = ConfigStub.getLongProperty(config,
+				"compactionMaxBytes", 1024 * 1024 * 1024);
+		try {
+			final long[] summary = hdfsContentSummary(String.format("%s/%s",
+					getHDFSDir(scopeId), name));
+			if (summary == null || summary[1] <= threshold
+					|| summary[0] / summary[1] >= targetFileSize
+					|| summary[0] > maxBytes) {
+				return;
+			}
+			doCompact(scopeId, name, targetFileSize, Boolean
+					.parseBoolean(config.getProperty("compactionCompress")));
+		} catch (MapReduceWSIException e) {
+			getServletContext().log(
+					String.format("Automatic compaction of %s in scope %s failed",
+							name, scopeId), e);
+		}
+	}
+
 	private String escapeShellArgument(String arg) {
-		// TODO(acgessler): verify that this is sufficient to escape shell args
-		return String.format("'%s'", arg.replace("'", "\\'"));
+		// Within single quotes, nothing (not even a backslash) escapes a
+		// quote, so close the quotes, add an escaped quote and reopen them
+		return String.format("'%s'", arg.replace("'", "'\\''"));
 	}
 
 	private String getRemoteLocalDir(long scopeId) {
@@ -314,32 +1874,207 @@ public class MapReduceWSIImpl implements MapReduceWSI {
 				getConfig().getProperty("remoteBaseLocalFolder"), scopeId);
 	}
 
+	// Make |name| unique to the current operation, i.e. for files that an
+	// operation places into the local folder of its scope. Other operations
+	// of the same scope may be running at the same time.
+	private static String getOperationFileName(String name) {
+		final Trace trace = currentTrace.get();
+		assert trace != null;
+		return String.format("%s_%s", name, trace.getOperationId());
+	}
+
 	private String getHDFSDir(long scopeId) {
 		return String.format("%s/%s",
 				getConfig().getProperty("remoteBaseHDFSFolder"), scopeId);
 	}
 
+	// HDFS folder that holds all shared datasets. Scope folders are named
+	// after their numeric ID, so this cannot collide with any scope.
+	private String getSharedHDFSDir() {
+		return String.format("%s/shared",
+				getConfig().getProperty("remoteBaseHDFSFolder"));
+	}
+
+	// Read timeout for agent calls that are expected to complete quickly
+	private static final int AGENT_TIMEOUT_MILLIS = 60000;
+
+	/**
+	 * Run |operation| on the MapReduceWSI agent.
+	 * 
+	 * @return The agent's results or null if the agent is not configured or
+	 *         not available. Callers must then fall back to the CLI.
+	 */
+	private String[] callAgent(int readTimeoutMillis, String operation,
+			String... arguments) throws MapReduceWSIException {
+		final AgentClient agent = (AgentClient) getServletContext()
+				.getAttribute("agent");
+		if (agent == null) {
+			return null;
+		}
+
+		final long start = System.currentTimeMillis();
+		final String[] result = agent.call(readTimeoutMillis, operation,
+				arguments);
+		if (result != null) {
+			// The streaming operation reports the MR job ID, which maps
+			// directly to the ID of the YARN application.
+			final Set<String> applicationIds = new LinkedHashSet<String>();
+			for (String value : result) {
+				findApplicationIds(value, applicationIds);
+			}
+			recordSpan(TraceSpan.AGENT, operation, start, applicationIds);
+		}
+		return result;
+	}
+
+	/** Create a HDFS directory (and its parents) */
+	private void hdfsMkdir(String path) throws MapReduceWSIException {
+		if (callAgent(AGENT_TIMEOUT_MILLIS, "mkdir", path) == null) {
+			execRemote("hadoop fs -mkdir -p " + escapeShellArgument(path));
+		}
+	}
+
+	/** Recursively delete a HDFS file or directory */
+	private void hdfsDelete(String path) throws MapReduceWSIException {
+		if (callAgent(AGENT_TIMEOUT_MILLIS, "delete", path) == null) {
+			execRemote("hadoop fs -rm -r -f " + escapeShellArgument(path));
+		}
+	}
+
+	// Pattern to detect HDFS glob patterns
+	private static final Pattern globPattern = Pattern.compile("[*?\\[{]");
+
+	/**
+	 * Get the total size of a HDFS file or directory, or of all files matching
+	 * a glob pattern.
+	 * 
+	 * @return Size in bytes or -1 if it cannot be determined, i.e. because
+	 *         the path does not exist
+	 */
+	private long hdfsContentLength(String path) throws MapReduceWSIException {
+		final long[] summary = hdfsContentSummary(path);
+		return summary == null ? -1 : summary[0];
+	}
+
+	/**
+	 * Get the total size and the number of files of a HDFS file or directory,
+	 * or of all files matching a glob pattern.
+	 * 
+	 * @return Size in bytes and file count or null if they cannot be
+	 *         determined, i.e. because the path does not exist
+	 */
+	private long[] hdfsContentSummary(String path)
+			throws MapReduceWSIException {
+		if (!globPattern.matcher(path).find()) {
+			try {
+				final String[] result = callAgent(AGENT_TIMEOUT_MILLIS,
+						"contentSummary", path);
+				if (result != null) {
+					return new long[] { Long.parseLong(result[0]),
+							Long.parseLong(result[1]) };
+				}
+			} catch (MapReduceWSIException e) {
+				return null;
+			}
+		}
+
+		// Each matching path is reported on a line of its own, as directory
+		// count, file count, size and path. The command fails if nothing
+		// matches.
+		final String output = runRemote(
+				"hadoop fs -count " + escapeShellArgument(path)).getStdout();
+		final long[] total = new long[2];
+		boolean found = false;
+		for (String line : output.split("\n")) {
+			final String[] parts = line.trim().split("\\s+");
+			if (parts.length > 3 && parts[1].matches("\\d+")
+					&& parts[2].matches("\\d+")) {
+				total[0] += Long.parseLong(parts[2]);
+				total[1] += Long.parseLong(parts[1]);
+				found = true;
+			}
+		}
+		return found ? total : null;
+	}
+
+	/**
+	 * Recursively change permissions of a HDFS file or directory. |mode| is
+	 * given in any syntax understood by <code>hadoop fs -chmod</code>.
+	 */
+	private void hdfsChmod(String mode, String path)
+			throws MapReduceWSIException {
+		if (callAgent(AGENT_TIMEOUT_MILLIS, "chmod", mode, path) == null) {
+			execRemote(String.format("hadoop fs -chmod -R %s %s", mode,
+					escapeShellArgument(path)));
+		}
+	}
+
 	/**
 	 * Execute a given command on the remote host. No further checking is
 	 * performed on the command string.
 	 * 
+	 * If the current operation is traced, the trace ID is passed to the
+	 * command in the MAPREDUCE_WSI_TRACE_ID environment variable and the IDs
+	 * of any YARN applications mentioned in the output are recorded.
+	 * 
 	 * @param command
+	 * @return Standard output of the command
 	 * @throws MapReduceWSIException
+	 *             If the command could not be run or exited with a non-zero
+	 *             code. The message includes the end of its output.
 	 */
-	private void execRemote(String command) throws MapReduceWSIException {
-		SSHExec sshConnection = initSSHConnection();
-		try {
-			// SSHXCUTE is not thread-safe
-			synchronized (sshConnection) {
-				sshConnection.exec(new ExecCommand(command));
-			}
-		} catch (TaskExecFailException e) {
-			e.printStackTrace();
-			throw new MapReduceWSIException("Failed to execute remote command",
-					e);
-		} finally {
-			sshConnection.disconnect();
+	private String execRemote(String command) throws MapReduceWSIException {
+		final RemoteExecutor.Result result = runRemote(command);
+		if (result.getExitCode() != 0) {
+			throw new MapReduceWSIException(String.format(
+					"Remote command %s exited with code %s: %s%s",
+					getCommandLabel(command), result.getExitCode(),
+					tail(result.getStderr(), MAX_ERROR_OUTPUT_CHARS),
+					tail(result.getStdout(), MAX_ERROR_OUTPUT_CHARS)));
+		}
+		return result.getStdout();
+	}
+
+	// Maximum length of the output of a failed remote command (each of stdout
+	// and stderr) that is included in the error message
+	private static final int MAX_ERROR_OUTPUT_CHARS = 2000;
+
+	// Get the last |maxChars| characters of |text|
+	private static String tail(String text, int maxChars) {
+		return text.length() <= maxChars ? text : "..."
+				+ text.substring(text.length() - maxChars);
+	}
+
+	// Only the program name (and sub-command) goes into traces and error
+	// messages, the arguments may contain credentials.
+	private static String getCommandLabel(String command) {
+		final String[] tokens = command.trim().split("\\s+", 3);
+		return tokens.length > 1 ? tokens[0] + " " + tokens[1] : tokens[0];
+	}
+
+	/**
+	 * Like {@link #execRemote}, but leaves it to the caller to check the exit
+	 * code of the command. Used for commands that fail in expected ways.
+	 */
+	private RemoteExecutor.Result runRemote(String command)
+			throws MapReduceWSIException {
+		final String label = getCommandLabel(command);
+		final Trace trace = currentTrace.get();
+		if (trace != null) {
+			command = String.format("export MAPREDUCE_WSI_TRACE_ID=%s; %s",
+					trace.getTraceId(), command);
 		}
+
+		final long start = System.currentTimeMillis();
+		final RemoteExecutor.Result result = getRemote().exec(command);
+
+		final Set<String> applicationIds = new LinkedHashSet<String>();
+		findApplicationIds(result.getStdout(), applicationIds);
+		findApplicationIds(result.getStderr(), applicationIds);
+		// Includes the time spent waiting for and connecting the session,
+		// which are recorded as separate spans as well.
+		recordSpan(TraceSpan.EXEC, label, start, applicationIds);
+		return result;
 	}
 
 	/**
@@ -352,49 +2087,114 @@ public class MapReduceWSIImpl implements MapReduceWSI {
 	 */
 	private void copyToRemote(String srcJarName, String destName)
 			throws MapReduceWSIException {
-		SSHExec sshConnection = initSSHConnection();
-		try {
-			// SSHXCUTE is not thread-safe
-			synchronized (sshConnection) {
-				sshConnection.uploadSingleDataToServer(srcJarName, destName);
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
-			throw new MapReduceWSIException(String.format(
-					"Failed to copy source file %s to destination %s",
-					srcJarName, destName), e);
-		} finally {
-			sshConnection.disconnect();
+		final long start = System.currentTimeMillis();
+		getRemote().upload(srcJarName, destName);
+		recordSpan(TraceSpan.UPLOAD, destName, start);
+	}
+
+	// Pattern for IDs of YARN applications and (MR) jobs. Both share the same
+	// suffix, the job ID is derived from the application ID.
+	private static final Pattern applicationIdPattern = Pattern
+			.compile("\\b(?:application|job)_(\\d+_\\d+)\\b");
+
+	// Add the IDs of all YARN applications mentioned in |text| (which may be
+	// null) to |applicationIds|
+	private static void findApplicationIds(String text,
+			Set<String> applicationIds) {
+		if (text == null) {
+			return;
+		}
+		final Matcher matcher = applicationIdPattern.matcher(text);
+		while (matcher.find()) {
+			applicationIds.add("application_" + matcher.group(1));
 		}
 	}
 
-	/**
-	 * Obtain a SSH connection to the remote host that hosts hadoop.
-	 * 
-	 * @return SSH connection handle. The caller must close it using
-	 *         {@link SSHExec.disconnect} after finishing to use it.
-	 */
-	private SSHExec initSSHConnection() throws MapReduceWSIException {
-		Properties properties = getConfig();
-		ConnBean cb = new ConnBean(properties.getProperty("remoteHost"),
-				properties.getProperty("remoteUser"),
-				properties.getProperty("remotePassword"));
-		SSHExec sshConnection = SSHExec.getInstance(cb);
-		if (!sshConnection.connect()) {
-			throw new MapReduceWSIException("Failed to connect to remote host "
-					+ properties.getProperty("remoteHost"));
+	// Record a span that started at |startTime| and ends now in the trace of
+	// the current operation, if it is traced
+	static void recordSpan(String name, String detail, long startTime) {
+		recordSpan(name, detail, startTime, new LinkedHashSet<String>());
+	}
+
+	static void recordSpan(String name, String detail, long startTime,
+			Set<String> applicationIds) {
+		final Trace trace = currentTrace.get();
+		if (trace == null) {
+			return;
 		}
-		SSHExec.setOption(IOptionName.INTEVAL_TIME_BETWEEN_TASKS, 0L);
-		return sshConnection;
+		trace.addSpan(new TraceSpan(name, detail, startTime, System
+				.currentTimeMillis() - startTime, applicationIds
+				.toArray(new String[applicationIds.size()])));
+	}
+
+	/** Get the global executor for commands on the remote host */
+	private RemoteExecutor getRemote() {
+		RemoteExecutor remote = (RemoteExecutor) getServletContext()
+				.getAttribute("remote");
+
+		assert remote != null;
+		return remote;
 	}
 
 	/** Get global mapreduce-wsi configuration */
 	private Properties getConfig() {
-		ServletContext servletContext = (ServletContext) context
-				.getMessageContext().get(MessageContext.SERVLET_CONTEXT);
-		Properties prop = (Properties) servletContext.getAttribute("config");
+		Properties prop = (Properties) getServletContext().getAttribute(
+				"config");
 
 		assert prop != null;
 		return prop;
 	}
+
+	/** Get the global catalog of shared datasets */
+	private DatasetCatalog getCatalog() {
+		DatasetCatalog catalog = (DatasetCatalog) getServletContext()
+				.getAttribute("catalog");
+
+		assert catalog != null;
+		return catalog;
+	}
+
+	/** Get the global cache of partition column statistics */
+	private SplitStatisticsCache getSplitStatistics() {
+		SplitStatisticsCache statistics = (SplitStatisticsCache) getServletContext()
+				.getAttribute("splitStatistics");
+
+		assert statistics != null;
+		return statistics;
+	}
+
+	/** Get the global registry of scopes and jobs */
+	private JobRegistry getRegistry() {
+		JobRegistry registry = (JobRegistry) getServletContext().getAttribute(
+				"registry");
+
+		assert registry != null;
+		return registry;
+	}
+
+	/** Get the global store of operation traces */
+	private TraceStore getTraces() {
+		TraceStore traces = (TraceStore) getServletContext().getAttribute(
+				"traces");
+
+		assert traces != null;
+		return traces;
+	}
+
+	/** Get the global executor for asynchronous operations */
+	private OperationExecutor getOperations() {
+		OperationExecutor operations = (OperationExecutor) getServletContext()
+				.getAttribute("operations");
+
+		assert operations != null;
+		return operations;
+	}
+
+	private ServletContext getServletContext() {
+		if (servletContext != null) {
+			return servletContext;
+		}
+		return (ServletContext) context.getMessageContext().get(
+				MessageContext.SERVLET_CONTEXT);
+	}
 }
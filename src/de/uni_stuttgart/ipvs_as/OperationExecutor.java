@@ -0,0 +1,125 @@
+package de.uni_stuttgart.ipvs_as;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.servlet.ServletContext;
+
+/**
+ * Runs {@link MapReduceWSI} operations in the background on behalf of the
+ * asynchronous API variants and reports their completion to an optional
+ * callback URL through a {@link CallbackNotifier}.
+ *
+ * A single instance is shared by all endpoint instances through the servlet
+ * context (see {@link ConfigStub}).
+ *
+ * @author acgessler
+ */
+public class OperationExecutor {
+
+	/** Body of an asynchronous operation */
+	public interface Operation {
+		void run(MapReduceWSI wsi) throws MapReduceWSIException;
+	}
+
+	private final ServletContext servletContext;
+	private final ExecutorService executor;
+	private final CallbackNotifier notifier;
+	private final JobRegistry registry;
+
+	/**
+	 * @param servletContext
+	 *            Servlet context to run operations in.
+	 * @param maxConcurrentOperations
+	 *            Maximum number of operations running at the same time. Any
+	 *            further operations are queued. Note that their commands on
+	 *            the remote host are additionally bounded by the number of
+	 *            SSH sessions (see {@link SSHRemoteExecutor}).
+	 * @param notifier
+	 *            Notifier used to deliver completion events.
+	 * @param registry
+	 *            Registry to allocate operation IDs from and record queued
+	 *            operations in.
+	 */
+	public OperationExecutor(ServletContext servletContext,
+			int maxConcurrentOperations, CallbackNotifier notifier,
+			JobRegistry registry) {
+		this.servletContext = servletContext;
+		this.executor = Executors.newFixedThreadPool(maxConcurrentOperations);
+		this.notifier = notifier;
+		this.registry = registry;
+	}
+
+	/**
+	 * Queue |operation| for execution.
+	 *
+	 * @param operationName
+	 *            Name of the operation as reported in the completion event
+	 * @param scopeId
+	 *            Scope the operation runs in
+	 * @param outputPaths
+	 *            Absolute HDFS paths written by the operation
+	 * @param callbackURL
+	 *            URL to POST the {@link CompletionEvent} to once the
+	 *            operation finishes. Can be null or empty.
+	 * @return ID of the operation
+	 */
+	public long submit(final String operationName, final long scopeId,
+			final String[] outputPaths, final String callbackURL,
+			final Operation operation) throws MapReduceWSIException {
+		if (callbackURL != null && callbackURL.length() > 0) {
+			notifier.validateCallbackURL(callbackURL);
+		}
+
+		final long operationId = registry.newOperationId();
+		try {
+			registry.jobQueued(operationId, scopeId, operationName);
+		} catch (IOException e) {
+			throw new MapReduceWSIException("Failed to register operation", e);
+		}
+
+		executor.execute(new Runnable() {
+			public void run() {
+				final long start = System.currentTimeMillis();
+				String error = null;
+				try {
+					// The WebServiceContext of the originating request is no
+					// longer valid at this point.
+					operation.run(new MapReduceWSIImpl(servletContext,
+							operationId));
+				} catch (MapReduceWSIException e) {
+					error = e.getMessage();
+				} catch (RuntimeException e) {
+					error = e.toString();
+				}
+
+				if (error != null) {
+					servletContext.log(String.format(
+							"Asynchronous operation %s (%s) failed: %s",
+							operationId, operationName, error));
+				}
+
+				if (callbackURL == null || callbackURL.length() == 0) {
+					return;
+				}
+				notifier.notify(callbackURL, new CompletionEvent(operationId,
+						operationName, scopeId,
+						error == null ? CompletionEvent.STATUS_SUCCEEDED
+								: CompletionEvent.STATUS_FAILED,
+						System.currentTimeMillis() - start,
+						error == null ? outputPaths : new String[0], error));
+			}
+		});
+		return operationId;
+	}
+
+	/**
+	 * Stop accepting operations and abandon queued ones. Running operations
+	 * are interrupted.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+		notifier.shutdown();
+	}
+}
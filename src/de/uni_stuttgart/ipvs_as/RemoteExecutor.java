@@ -0,0 +1,52 @@
+package de.uni_stuttgart.ipvs_as;
+
+/**
+ * Runs commands on and copies files to the remote host that has the hadoop
+ * clients installed. The service uses {@link SSHRemoteExecutor}, test
+ * harnesses may put a different implementation into the "remote" attribute
+ * of the servlet context (see {@link ConfigStub}).
+ *
+ * Implementations must be thread-safe.
+ *
+ * @author acgessler
+ */
+public interface RemoteExecutor {
+
+	/** Outcome of a remote command */
+	public static class Result {
+		private final int exitCode;
+		private final String stdout;
+		private final String stderr;
+
+		public Result(int exitCode, String stdout, String stderr) {
+			this.exitCode = exitCode;
+			this.stdout = stdout;
+			this.stderr = stderr;
+		}
+
+		/** Exit code of the command, -1 if the remote host did not report one */
+		public int getExitCode() {
+			return exitCode;
+		}
+
+		public String getStdout() {
+			return stdout;
+		}
+
+		public String getStderr() {
+			return stderr;
+		}
+	}
+
+	/**
+	 * Run |command| using the remote user's default shell and wait for it to
+	 * complete.
+	 */
+	Result exec(String command) throws MapReduceWSIException;
+
+	/**
+	 * Copy the local file |srcName| to |destName| on the remote host. Given
+	 * paths are unchanged and not checked.
+	 */
+	void upload(String srcName, String destName) throws MapReduceWSIException;
+}
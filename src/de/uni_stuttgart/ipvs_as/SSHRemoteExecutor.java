@@ -0,0 +1,159 @@
+package de.uni_stuttgart.ipvs_as;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Semaphore;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpException;
+
+/**
+ * {@link RemoteExecutor} that reaches the remote host over (password-based)
+ * SSH.
+ *
+ * Every call opens its own SSH session, so calls made by concurrent
+ * operations never share any connection state. The number of sessions open
+ * at the same time is bounded, further calls wait for a session to close.
+ *
+ * A single instance is shared by all endpoint instances through the servlet
+ * context (see {@link ConfigStub}).
+ *
+ * @author acgessler
+ */
+public class SSHRemoteExecutor implements RemoteExecutor {
+
+	private static final int SSH_PORT = 22;
+	private static final int CONNECT_TIMEOUT_MILLIS = 30000;
+	private static final String ENCODING = "UTF-8";
+
+	private final String host;
+	private final String user;
+	private final String password;
+	private final Semaphore sessions;
+
+	/**
+	 * @param maxSessions
+	 *            Maximum number of SSH sessions open at the same time. This
+	 *            should stay below the MaxStartups and MaxSessions limits of
+	 *            the remote host's SSH server.
+	 */
+	public SSHRemoteExecutor(String host, String user, String password,
+			int maxSessions) {
+		this.host = host;
+		this.user = user;
+		this.password = password;
+		this.sessions = new Semaphore(maxSessions, true);
+	}
+
+	public Result exec(String command) throws MapReduceWSIException {
+		final Session session = openSession();
+		try {
+			final ChannelExec channel = (ChannelExec) session
+					.openChannel("exec");
+			try {
+				channel.setCommand(command);
+				final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+				channel.setErrStream(stderr);
+				final InputStream in = channel.getInputStream();
+				channel.connect();
+
+				final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+				final byte[] buffer = new byte[8192];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					stdout.write(buffer, 0, read);
+				}
+				// The exit status may arrive after the end of the output
+				while (!channel.isClosed()) {
+					Thread.sleep(10);
+				}
+				return new Result(channel.getExitStatus(),
+						stdout.toString(ENCODING), stderr.toString(ENCODING));
+			} finally {
+				channel.disconnect();
+			}
+		} catch (JSchException e) {
+			throw new MapReduceWSIException(
+					"Failed to execute remote command", e);
+		} catch (IOException e) {
+			throw new MapReduceWSIException(
+					"Failed to execute remote command", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MapReduceWSIException("Interrupted", e);
+		} finally {
+			closeSession(session);
+		}
+	}
+
+	public void upload(String srcName, String destName)
+			throws MapReduceWSIException {
+		final Session session = openSession();
+		try {
+			final ChannelSftp channel = (ChannelSftp) session
+					.openChannel("sftp");
+			try {
+				channel.connect();
+				// Unlike the remote shell, SFTP does not expand ~, which the
+				// configured remote folders usually start with
+				String remoteName = destName;
+				if (remoteName.equals("~") || remoteName.startsWith("~/")) {
+					remoteName = channel.getHome() + remoteName.substring(1);
+				}
+				channel.put(srcName, remoteName);
+			} finally {
+				channel.disconnect();
+			}
+		} catch (JSchException e) {
+			throw new MapReduceWSIException(String.format(
+					"Failed to copy source file %s to destination %s",
+					srcName, destName), e);
+		} catch (SftpException e) {
+			throw new MapReduceWSIException(String.format(
+					"Failed to copy source file %s to destination %s",
+					srcName, destName), e);
+		} finally {
+			closeSession(session);
+		}
+	}
+
+	// Wait for a free session slot and connect. The session obtained must be
+	// closed using closeSession().
+	private Session openSession() throws MapReduceWSIException {
+		final long waitStart = System.currentTimeMillis();
+		try {
+			sessions.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MapReduceWSIException("Interrupted", e);
+		}
+		MapReduceWSIImpl.recordSpan(TraceSpan.SSH_WAIT, null, waitStart);
+
+		final long start = System.currentTimeMillis();
+		try {
+			final Session session = new JSch().getSession(user, host,
+					SSH_PORT);
+			session.setPassword(password);
+			// Same as SSHXCUTE, which was used before. The service only ever
+			// talks to the single configured host.
+			session.setConfig("StrictHostKeyChecking", "no");
+			session.connect(CONNECT_TIMEOUT_MILLIS);
+			MapReduceWSIImpl.recordSpan(TraceSpan.SSH_CONNECT, null, start);
+			return session;
+		} catch (JSchException e) {
+			sessions.release();
+			throw new MapReduceWSIException(
+					"Failed to connect to remote host " + host, e);
+		}
+	}
+
+	private void closeSession(Session session) {
+		session.disconnect();
+		sessions.release();
+	}
+}
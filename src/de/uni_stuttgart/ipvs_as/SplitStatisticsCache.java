@@ -0,0 +1,67 @@
+package de.uni_stuttgart.ipvs_as;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of the split boundaries sampled from source tables for balanced
+ * imports (see {@link MapReduceWSIImpl#importIntoHDFS}), keyed by source
+ * database, table (including filters) and partition column.
+ *
+ * Stale boundaries only affect how evenly an import is balanced, never which
+ * rows it imports, so they can be kept for a long time. Only the most
+ * recently used |capacity| entries are kept, older ones are dropped.
+ *
+ * @author acgessler
+ */
+public class SplitStatisticsCache {
+
+	private static class Entry {
+		final String[] boundaries;
+		final long sampledAt;
+
+		Entry(String[] boundaries, long sampledAt) {
+			this.boundaries = boundaries;
+			this.sampledAt = sampledAt;
+		}
+	}
+
+	private final Map<String, Entry> entries;
+
+	/**
+	 * @param capacity
+	 *            Maximum number of entries to keep
+	 */
+	public SplitStatisticsCache(final int capacity) {
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<String, SplitStatisticsCache.Entry> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Get the boundaries cached under |key|.
+	 *
+	 * @return Boundaries or null if there are none or they are older than
+	 *         |maxAgeMillis|. An empty array means sampling succeeded but
+	 *         yielded no boundaries, e.g. because the source is empty.
+	 */
+	public synchronized String[] get(String key, long maxAgeMillis) {
+		final Entry entry = entries.get(key);
+		if (entry == null
+				|| System.currentTimeMillis() - entry.sampledAt > maxAgeMillis) {
+			return null;
+		}
+		return entry.boundaries.clone();
+	}
+
+	public synchronized void put(String key, String[] boundaries) {
+		entries.put(key,
+				new Entry(boundaries.clone(), System.currentTimeMillis()));
+	}
+}
@@ -0,0 +1,104 @@
+package de.uni_stuttgart.ipvs_as;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Timing summary of all tasks of one type (map or reduce) of a MapReduce job.
+ * Part of a {@link JobReport}.
+ *
+ * @author acgessler
+ */
+public class TaskSummary {
+
+	private int count;
+	private int failedCount;
+	private long minMillis;
+	private long maxMillis;
+	private long averageMillis;
+	private long totalMillis;
+
+	public TaskSummary() {
+	}
+
+	/** Add a task that ran for |elapsedMillis| to the summary */
+	void addTask(boolean succeeded, long elapsedMillis) {
+		if (count == 0 || elapsedMillis < minMillis) {
+			minMillis = elapsedMillis;
+		}
+		maxMillis = Math.max(maxMillis, elapsedMillis);
+		totalMillis += elapsedMillis;
+		++count;
+		averageMillis = totalMillis / count;
+		if (!succeeded) {
+			++failedCount;
+		}
+	}
+
+	/** Number of tasks */
+	public int getCount() {
+		return count;
+	}
+
+	public void setCount(int count) {
+		this.count = count;
+	}
+
+	/** Number of tasks that did not succeed (i.e. failed or were killed) */
+	public int getFailedCount() {
+		return failedCount;
+	}
+
+	public void setFailedCount(int failedCount) {
+		this.failedCount = failedCount;
+	}
+
+	public long getMinMillis() {
+		return minMillis;
+	}
+
+	public void setMinMillis(long minMillis) {
+		this.minMillis = minMillis;
+	}
+
+	/**
+	 * Duration of the slowest task. Compared to |averageMillis|, this tells
+	 * whether the job suffers from skew.
+	 */
+	public long getMaxMillis() {
+		return maxMillis;
+	}
+
+	public void setMaxMillis(long maxMillis) {
+		this.maxMillis = maxMillis;
+	}
+
+	public long getAverageMillis() {
+		return averageMillis;
+	}
+
+	public void setAverageMillis(long averageMillis) {
+		this.averageMillis = averageMillis;
+	}
+
+	/** Sum of the durations of all tasks */
+	public long getTotalMillis() {
+		return totalMillis;
+	}
+
+	public void setTotalMillis(long totalMillis) {
+		this.totalMillis = totalMillis;
+	}
+
+	/** Get a representation suitable for {@link Json#write} */
+	public Map<String, Object> toMap() {
+		final Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("count", count);
+		map.put("failedCount", failedCount);
+		map.put("minMillis", minMillis);
+		map.put("maxMillis", maxMillis);
+		map.put("averageMillis", averageMillis);
+		map.put("totalMillis", totalMillis);
+		return map;
+	}
+}
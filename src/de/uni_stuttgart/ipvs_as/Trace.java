@@ -0,0 +1,119 @@
+package de.uni_stuttgart.ipvs_as;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Timeline of a single operation: the {@link TraceSpan}s for all remote steps
+ * it took, in order. Returned by {@link MapReduceWSI#getTrace}.
+ *
+ * @author acgessler
+ */
+public class Trace {
+
+	private String traceId;
+	private long operationId;
+	private String operation;
+	private long startTime;
+	private long endTime;
+	private List<TraceSpan> spans = new ArrayList<TraceSpan>();
+
+	public Trace() {
+	}
+
+	Trace(String traceId, long operationId, String operation, long startTime) {
+		this.traceId = traceId;
+		this.operationId = operationId;
+		this.operation = operation;
+		this.startTime = startTime;
+	}
+
+	Trace(Trace other) {
+		synchronized (other) {
+			this.traceId = other.traceId;
+			this.operationId = other.operationId;
+			this.operation = other.operation;
+			this.startTime = other.startTime;
+			this.endTime = other.endTime;
+			this.spans = new ArrayList<TraceSpan>(other.spans);
+		}
+	}
+
+	/**
+	 * ID passed to remote commands in the MAPREDUCE_WSI_TRACE_ID environment
+	 * variable
+	 */
+	public String getTraceId() {
+		return traceId;
+	}
+
+	public void setTraceId(String traceId) {
+		this.traceId = traceId;
+	}
+
+	public long getOperationId() {
+		return operationId;
+	}
+
+	public void setOperationId(long operationId) {
+		this.operationId = operationId;
+	}
+
+	/** Name of the {@link MapReduceWSI} method, i.e. "runMapReduce" */
+	public String getOperation() {
+		return operation;
+	}
+
+	public void setOperation(String operation) {
+		this.operation = operation;
+	}
+
+	/** Time (ms since epoch) the operation started running */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public void setStartTime(long startTime) {
+		this.startTime = startTime;
+	}
+
+	/** Time (ms since epoch) the operation finished, 0 if it did not yet */
+	public synchronized long getEndTime() {
+		return endTime;
+	}
+
+	public synchronized void setEndTime(long endTime) {
+		this.endTime = endTime;
+	}
+
+	public synchronized TraceSpan[] getSpans() {
+		return spans.toArray(new TraceSpan[spans.size()]);
+	}
+
+	public synchronized void setSpans(TraceSpan[] spans) {
+		this.spans = new ArrayList<TraceSpan>(Arrays.asList(spans));
+	}
+
+	synchronized void addSpan(TraceSpan span) {
+		spans.add(span);
+	}
+
+	/** Get a representation suitable for {@link Json#write} */
+	public synchronized Map<String, Object> toMap() {
+		final Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("traceId", traceId);
+		map.put("operationId", operationId);
+		map.put("operation", operation);
+		map.put("startTime", startTime);
+		map.put("endTime", endTime);
+		final List<Object> spanMaps = new ArrayList<Object>();
+		for (TraceSpan span : spans) {
+			spanMaps.add(span.toMap());
+		}
+		map.put("spans", spanMaps);
+		return map;
+	}
+}
@@ -0,0 +1,102 @@
+package de.uni_stuttgart.ipvs_as;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A single timed step of an operation, i.e. a SSH connect, an upload or a
+ * remote command. Part of a {@link Trace}.
+ *
+ * @author acgessler
+ */
+public class TraceSpan {
+
+	/** Waiting in the queue of asynchronous operations */
+	public static final String QUEUE = "queue";
+
+	/** Waiting for the (shared) SSH session to become available */
+	public static final String SSH_WAIT = "sshWait";
+
+	public static final String SSH_CONNECT = "sshConnect";
+	public static final String UPLOAD = "upload";
+	public static final String EXEC = "exec";
+	public static final String AGENT = "agent";
+
+	private String name;
+	private String detail;
+	private long startTime;
+	private long durationMillis;
+	private String[] applicationIds = new String[0];
+
+	public TraceSpan() {
+	}
+
+	TraceSpan(String name, String detail, long startTime, long durationMillis,
+			String[] applicationIds) {
+		this.name = name;
+		this.detail = detail;
+		this.startTime = startTime;
+		this.durationMillis = durationMillis;
+		this.applicationIds = applicationIds;
+	}
+
+	/** Kind of step, one of the constants above */
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * What the step did, i.e. the remote command ("sqoop import") or the
+	 * upload destination. Never contains command arguments, which may include
+	 * credentials.
+	 */
+	public String getDetail() {
+		return detail;
+	}
+
+	public void setDetail(String detail) {
+		this.detail = detail;
+	}
+
+	/** Time (ms since epoch) the step started */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public void setStartTime(long startTime) {
+		this.startTime = startTime;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	public void setDurationMillis(long durationMillis) {
+		this.durationMillis = durationMillis;
+	}
+
+	/** IDs of the YARN applications started by the step, if any */
+	public String[] getApplicationIds() {
+		return applicationIds;
+	}
+
+	public void setApplicationIds(String[] applicationIds) {
+		this.applicationIds = applicationIds;
+	}
+
+	/** Get a representation suitable for {@link Json#write} */
+	public Map<String, Object> toMap() {
+		final Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("name", name);
+		map.put("detail", detail);
+		map.put("startTime", startTime);
+		map.put("durationMillis", durationMillis);
+		map.put("applicationIds", Arrays.asList(applicationIds));
+		return map;
+	}
+}
@@ -0,0 +1,78 @@
+package de.uni_stuttgart.ipvs_as;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * In-memory store of the {@link Trace}s of recent operations, keyed by
+ * operation ID. Only the most recently started |capacity| traces are kept,
+ * older ones are dropped.
+ *
+ * Traces are not persisted, unlike the job summaries in {@link JobRegistry}.
+ *
+ * @author acgessler
+ */
+public class TraceStore {
+
+	private final Map<Long, Trace> traces;
+
+	/**
+	 * @param capacity
+	 *            Maximum number of traces to keep
+	 */
+	public TraceStore(final int capacity) {
+		this.traces = new LinkedHashMap<Long, Trace>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Trace> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Start a new trace for operation |operationId|. The trace is live, spans
+	 * added to it later are visible through {@link #get}.
+	 */
+	public synchronized Trace begin(long operationId, String operation) {
+		final Trace trace = new Trace(UUID.randomUUID().toString(),
+				operationId, operation, System.currentTimeMillis());
+		traces.put(operationId, trace);
+		return trace;
+	}
+
+	/**
+	 * Get a snapshot of the trace of operation |operationId|.
+	 *
+	 * @return Snapshot of the trace or null if there is no trace for the
+	 *         operation (anymore)
+	 */
+	public synchronized Trace get(long operationId) {
+		final Trace trace = traces.get(operationId);
+		return trace == null ? null : new Trace(trace);
+	}
+
+	/**
+	 * Get snapshots of the up to |maxCount| most recently started traces,
+	 * most recent first.
+	 */
+	public synchronized Trace[] list(int maxCount) {
+		final List<Trace> result = new ArrayList<Trace>();
+		for (Trace trace : traces.values()) {
+			result.add(trace);
+		}
+		Collections.reverse(result);
+		final List<Trace> recent = result.subList(0,
+				Math.min(maxCount, result.size()));
+		final Trace[] snapshots = new Trace[recent.size()];
+		for (int i = 0; i < snapshots.length; ++i) {
+			snapshots[i] = new Trace(recent.get(i));
+		}
+		return snapshots;
+	}
+}
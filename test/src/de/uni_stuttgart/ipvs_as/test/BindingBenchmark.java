@@ -0,0 +1,250 @@
+package de.uni_stuttgart.ipvs_as.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.uni_stuttgart.ipvs_as.MapReduceWSI;
+import de.uni_stuttgart.ipvs_as.client.MapReduceWSIClient;
+
+/**
+ * Benchmark comparing per-call overhead and throughput of the SOAP binding
+ * against the JSON/HTTP binding of MapReduceWSI.
+ *
+ * Requires a deployed MapReduceWSI service (see {@link EndToEndTest}). The
+ * operation used is {@link MapReduceWSI#detachSharedDataset} for a dataset
+ * that does not exist: it does not touch the cluster, so the measured times
+ * are pure binding overhead.
+ *
+ * Measured are
+ * <ul>
+ * <li>SOAP, cold: creating the {@link javax.xml.ws.Service} (which fetches and parses the
+ * WSDL) plus one call, as done by clients that connect per status check.
+ * <li>SOAP, warm: calls on a port that is reused.
+ * <li>SOAP via {@link MapReduceWSIClient}, cold: creating a client (which
+ * needs no WSDL) plus one call.
+ * <li>JSON: one HTTP POST per call.
+ * </ul>
+ * followed by a throughput measurement with {@link #THREADS} concurrent
+ * clients for all warm bindings and with {@link #IN_FLIGHT} concurrent
+ * non-blocking calls on a single {@link MapReduceWSIClient}.
+ *
+ * @author acgessler
+ */
+public class BindingBenchmark {
+
+	public static final String SERVICE_URL = "http://localhost:8080/mapreduce-wsi";
+	public static final String JSON_PATH = SERVICE_URL + "/json/";
+
+	public static final int WARMUP_CALLS = 200;
+	public static final int COLD_CALLS = 20;
+	public static final int CALLS = 2000;
+	public static final int THREADS = 16;
+	public static final int IN_FLIGHT = 256;
+
+	private static final String DETACH_BODY = "{\"scopeId\": 1, \"datasetName\": \"mapreduce_wsi_benchmark_nonexistent\"}";
+
+	private interface Call {
+		void run() throws Exception;
+	}
+
+	public void run() throws Exception {
+		final Call soapCold = new Call() {
+			public void run() throws Exception {
+				EndToEndTest.connect().detachSharedDataset(1,
+						"mapreduce_wsi_benchmark_nonexistent");
+			}
+		};
+
+		final MapReduceWSI port = EndToEndTest.connect();
+		final Call soapWarm = new Call() {
+			public void run() throws Exception {
+				port.detachSharedDataset(1,
+						"mapreduce_wsi_benchmark_nonexistent");
+			}
+		};
+
+		final Call clientCold = new Call() {
+			public void run() throws Exception {
+				final MapReduceWSIClient client = new MapReduceWSIClient(
+						SERVICE_URL);
+				try {
+					client.sync().detachSharedDataset(1,
+							"mapreduce_wsi_benchmark_nonexistent");
+				} finally {
+					client.close();
+				}
+			}
+		};
+
+		final MapReduceWSIClient client = new MapReduceWSIClient(SERVICE_URL);
+		final Call clientWarm = new Call() {
+			public void run() throws Exception {
+				client.sync().detachSharedDataset(1,
+						"mapreduce_wsi_benchmark_nonexistent");
+			}
+		};
+
+		final URL jsonURL = new URL(JSON_PATH + "detachSharedDataset");
+		final Call json = new Call() {
+			public void run() throws Exception {
+				postJson(jsonURL, DETACH_BODY);
+			}
+		};
+
+		repeat(soapWarm, WARMUP_CALLS);
+		repeat(clientWarm, WARMUP_CALLS);
+		repeat(json, WARMUP_CALLS);
+
+		report("SOAP (cold, per-call Service.create)", COLD_CALLS,
+				repeat(soapCold, COLD_CALLS));
+		report("SOAP (cold, per-call client)", COLD_CALLS,
+				repeat(clientCold, COLD_CALLS));
+		report("SOAP (warm, reused port)", CALLS, repeat(soapWarm, CALLS));
+		report("SOAP (warm, client)", CALLS, repeat(clientWarm, CALLS));
+		report("JSON/HTTP", CALLS, repeat(json, CALLS));
+
+		report(String.format("SOAP (warm, %s threads)", THREADS), CALLS,
+				repeatConcurrently(soapWarm, CALLS, THREADS));
+		report(String.format("SOAP (warm, client, %s threads)", THREADS),
+				CALLS, repeatConcurrently(clientWarm, CALLS, THREADS));
+		report(String.format("JSON/HTTP (%s threads)", THREADS), CALLS,
+				repeatConcurrently(json, CALLS, THREADS));
+		report(String.format("SOAP (client, %s in flight)", IN_FLIGHT),
+				CALLS, repeatAsync(client, CALLS, IN_FLIGHT));
+		client.close();
+	}
+
+	// Issue |count| non-blocking calls on |client|, keeping at most
+	// |inFlight| outstanding. Returns elapsed nanoseconds.
+	private static long repeatAsync(MapReduceWSIClient client, int count,
+			int inFlight) throws Exception {
+		final List<Future<Void>> pending = new ArrayList<Future<Void>>();
+		long failures = 0;
+		final long start = System.nanoTime();
+		for (int i = 0; i < count; ++i) {
+			if (pending.size() == inFlight) {
+				failures += await(pending);
+			}
+			pending.add(client.async().detachSharedDataset(1,
+					"mapreduce_wsi_benchmark_nonexistent"));
+		}
+		failures += await(pending);
+		final long elapsed = System.nanoTime() - start;
+		if (failures > 0) {
+			System.out.println(String.format("  (%s calls failed)", failures));
+		}
+		return elapsed;
+	}
+
+	// Wait for all of |futures| and clear the list. Returns the number of
+	// failed calls.
+	private static long await(List<Future<Void>> futures)
+			throws InterruptedException {
+		long failures = 0;
+		for (Future<Void> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				++failures;
+			}
+		}
+		futures.clear();
+		return failures;
+	}
+
+	private static void postJson(URL url, String body) throws IOException {
+		final HttpURLConnection connection = (HttpURLConnection) url
+				.openConnection();
+		connection.setDoOutput(true);
+		connection.setRequestMethod("POST");
+		connection.setRequestProperty("Content-Type", "application/json");
+		final OutputStream out = connection.getOutputStream();
+		try {
+			out.write(body.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+
+		final int status = connection.getResponseCode();
+		final InputStream in = status < 400 ? connection.getInputStream()
+				: connection.getErrorStream();
+
+		// Drain the response fully so the connection is returned to the
+		// keep-alive pool.
+		final ByteArrayOutputStream response = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[4096];
+		try {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				response.write(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		if (status != HttpURLConnection.HTTP_OK) {
+			throw new IOException("JSON call failed: "
+					+ response.toString("UTF-8"));
+		}
+	}
+
+	// Run |call| |count| times sequentially. Returns elapsed nanoseconds.
+	private static long repeat(Call call, int count) throws Exception {
+		final long start = System.nanoTime();
+		for (int i = 0; i < count; ++i) {
+			call.run();
+		}
+		return System.nanoTime() - start;
+	}
+
+	// Run |call| |count| times distributed over |threads| threads. Returns
+	// elapsed nanoseconds.
+	private static long repeatConcurrently(final Call call, int count,
+			int threads) throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final AtomicLong failures = new AtomicLong();
+		final long start = System.nanoTime();
+		for (int i = 0; i < count; ++i) {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						call.run();
+					} catch (Exception e) {
+						failures.incrementAndGet();
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.HOURS);
+		final long elapsed = System.nanoTime() - start;
+		if (failures.get() > 0) {
+			System.out.println(String.format("  (%s calls failed)",
+					failures.get()));
+		}
+		return elapsed;
+	}
+
+	private static void report(String name, int count, long elapsedNanos) {
+		final double perCallMillis = elapsedNanos / 1e6 / count;
+		final double callsPerSecond = count / (elapsedNanos / 1e9);
+		System.out.println(String.format(
+				"%-40s %10.3f ms/call %10.1f calls/s", name, perCallMillis,
+				callsPerSecond));
+	}
+
+	public static void main(String[] arguments) throws Exception {
+		(new BindingBenchmark()).run();
+	}
+}
@@ -0,0 +1,244 @@
+package de.uni_stuttgart.ipvs_as.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletContext;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import de.uni_stuttgart.ipvs_as.CallbackNotifier;
+import de.uni_stuttgart.ipvs_as.CompletionEvent;
+import de.uni_stuttgart.ipvs_as.Json;
+
+/**
+ * Test for {@link CallbackNotifier} against a local HTTP stand-in for a
+ * client's callback endpoint. Unlike {@link EndToEndTest}, this does not need
+ * a cluster or a deployed service.
+ *
+ * Verifies that
+ * <ul>
+ * <li>a completion event arrives intact on the first attempt,
+ * <li>failed deliveries are retried until the endpoint accepts the event,
+ * <li>deliveries are abandoned (and logged) after the configured number of
+ * attempts,
+ * <li>callback URLs are only accepted for allowed hosts.
+ * </ul>
+ *
+ * @author acgessler
+ */
+public class CallbackNotifierTest {
+
+	public static final int MAX_ATTEMPTS = 4;
+	public static final long INITIAL_BACKOFF_MILLIS = 50;
+
+	// Stand-in for a client's callback endpoint that fails the first
+	// |failuresBeforeSuccess| requests with HTTP 503.
+	private static class StandIn implements HttpHandler {
+		final AtomicInteger failuresBeforeSuccess;
+		final AtomicInteger requests = new AtomicInteger();
+		final List<String> bodies = new CopyOnWriteArrayList<String>();
+		final CountDownLatch delivered = new CountDownLatch(1);
+
+		StandIn(int failuresBeforeSuccess) {
+			this.failuresBeforeSuccess = new AtomicInteger(
+					failuresBeforeSuccess);
+		}
+
+		public void handle(HttpExchange exchange) throws IOException {
+			requests.incrementAndGet();
+			final String body = readFully(exchange.getRequestBody());
+			if (failuresBeforeSuccess.getAndDecrement() > 0) {
+				exchange.sendResponseHeaders(503, -1);
+				exchange.close();
+				return;
+			}
+			bodies.add(body);
+			exchange.sendResponseHeaders(204, -1);
+			exchange.close();
+			delivered.countDown();
+		}
+	}
+
+	// Stand-in for the servlet context that records log messages
+	private static class Log implements InvocationHandler {
+		final List<String> messages = new CopyOnWriteArrayList<String>();
+		final ServletContext context = (ServletContext) Proxy
+				.newProxyInstance(ServletContext.class.getClassLoader(),
+						new Class<?>[] { ServletContext.class }, this);
+
+		public Object invoke(Object proxy, Method method, Object[] arguments) {
+			if (method.getName().equals("log")) {
+				messages.add((String) arguments[0]);
+			}
+			return null;
+		}
+	}
+
+	private final Log log = new Log();
+
+	public void run() throws Exception {
+		testDelivery();
+		testRetries();
+		testGivesUp();
+		testAllowedHosts();
+		System.out.println("CallbackNotifierTest: all tests passed");
+	}
+
+	private void testDelivery() throws Exception {
+		final StandIn standIn = new StandIn(0);
+		final HttpServer server = startServer(standIn);
+		final CallbackNotifier notifier = new CallbackNotifier(log.context,
+				1, MAX_ATTEMPTS, INITIAL_BACKOFF_MILLIS);
+		try {
+			notifier.notify(urlOf(server), new CompletionEvent(42,
+					"runStreamingMapReduce", 1234,
+					CompletionEvent.STATUS_SUCCEEDED, 815,
+					new String[] { "/user/mapreduce_wsi/1234/mr_output" }, null));
+			check(standIn.delivered.await(10, TimeUnit.SECONDS),
+					"event was not delivered");
+
+			@SuppressWarnings("unchecked")
+			final Map<String, Object> event = (Map<String, Object>) Json
+					.read(new StringReader(standIn.bodies.get(0)));
+			check(event.get("operationId").equals(42L), "operationId");
+			check(event.get("status").equals("SUCCEEDED"), "status");
+			check(event.get("durationMillis").equals(815L), "durationMillis");
+			check(((List<?>) event.get("outputPaths")).get(0).equals(
+					"/user/mapreduce_wsi/1234/mr_output"), "outputPaths");
+			check(event.containsKey("error") && event.get("error") == null,
+					"error");
+		} finally {
+			notifier.shutdown();
+			server.stop(0);
+		}
+	}
+
+	private void testRetries() throws Exception {
+		final StandIn standIn = new StandIn(2);
+		final HttpServer server = startServer(standIn);
+		final CallbackNotifier notifier = new CallbackNotifier(log.context,
+				1, MAX_ATTEMPTS, INITIAL_BACKOFF_MILLIS);
+		try {
+			notifier.notify(urlOf(server), failedEvent());
+			check(standIn.delivered.await(10, TimeUnit.SECONDS),
+					"event was not delivered after retries");
+			check(standIn.requests.get() == 3, "expected exactly 3 attempts");
+		} finally {
+			notifier.shutdown();
+			server.stop(0);
+		}
+	}
+
+	private void testGivesUp() throws Exception {
+		final StandIn standIn = new StandIn(Integer.MAX_VALUE);
+		final HttpServer server = startServer(standIn);
+		final CallbackNotifier notifier = new CallbackNotifier(log.context,
+				1, MAX_ATTEMPTS, INITIAL_BACKOFF_MILLIS);
+		try {
+			notifier.notify(urlOf(server), failedEvent());
+
+			// Sum of all backoff delays plus generous slack
+			Thread.sleep(INITIAL_BACKOFF_MILLIS * (1 << MAX_ATTEMPTS) + 2000);
+			check(standIn.requests.get() == MAX_ATTEMPTS, String.format(
+					"expected %s attempts, got %s", MAX_ATTEMPTS,
+					standIn.requests.get()));
+			check(log.messages.size() == 1
+					&& log.messages.get(0).startsWith("Giving up"),
+					"abandoned delivery is logged");
+		} finally {
+			notifier.shutdown();
+			server.stop(0);
+		}
+	}
+
+	private void testAllowedHosts() throws Exception {
+		final CallbackNotifier open = new CallbackNotifier(log.context, 1,
+				MAX_ATTEMPTS, INITIAL_BACKOFF_MILLIS);
+		final CallbackNotifier restricted = new CallbackNotifier(log.context,
+				1, MAX_ATTEMPTS, INITIAL_BACKOFF_MILLIS, new String[] {
+						"localhost", ".example.com" });
+		try {
+			check(!isAccepted(open, "http://localhost/callback"),
+					"loopback callback rejected without allowed hosts");
+			check(!isAccepted(open, "http://10.0.0.1/callback"),
+					"private callback rejected without allowed hosts");
+			check(isAccepted(restricted, "http://localhost:8080/callback"),
+					"allowed host accepted");
+			check(isAccepted(restricted, "https://client.example.com/"),
+					"allowed subdomain accepted");
+			check(!isAccepted(restricted, "http://example.org/callback"),
+					"other host rejected");
+			check(!isAccepted(restricted, "file:///etc/passwd"),
+					"non-HTTP URL rejected");
+		} finally {
+			open.shutdown();
+			restricted.shutdown();
+		}
+	}
+
+	private static boolean isAccepted(CallbackNotifier notifier,
+			String callbackURL) {
+		try {
+			notifier.validateCallbackURL(callbackURL);
+			return true;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	private static CompletionEvent failedEvent() {
+		return new CompletionEvent(43, "importIntoHDFS", 1234,
+				CompletionEvent.STATUS_FAILED, 10, new String[0],
+				"Failed to run import into HDFS remotely using sqoop");
+	}
+
+	private static HttpServer startServer(HttpHandler handler)
+			throws IOException {
+		final HttpServer server = HttpServer.create(new InetSocketAddress(
+				"localhost", 0), 0);
+		server.createContext("/callback", handler);
+		server.start();
+		return server;
+	}
+
+	private static String urlOf(HttpServer server) {
+		return String.format("http://localhost:%s/callback", server
+				.getAddress().getPort());
+	}
+
+	private static String readFully(InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[1024];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		in.close();
+		return out.toString("UTF-8");
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError("CallbackNotifierTest failed: " + message);
+		}
+	}
+
+	public static void main(String[] arguments) throws Exception {
+		(new CallbackNotifierTest()).run();
+	}
+}
@@ -101,46 +101,58 @@ public class EndToEndTest {
 		// Populate the DB with all table schemata and synthetic inputs
 		initDBContents();
 
-		// Dynamically connect to MapReduce-WSI (to avoid wsimport)
-		URL url = new URL(WSDL_PATH);
-		QName qname = new QName(SERVICE_SCOPE, SERVICE_NAME);
-		Service service = Service.create(url, qname);
-		MapReduceWSI port = service.getPort(MapReduceWSI.class);
-
-		long scope;
+		MapReduceWSI port = connect();
 		try {
-			// Create a new MapReduce-WSI scope
-			scope = port.createScope();
-
-			// Import data into HDFS, discard the primary key
-			// (This verifies correct filtering)
-			final String importQuery = String.format(
-					"SELECT num0, num1, num2, num3, num4, num5, num6 FROM %s",
-					DB_INPUT_TABLE_NAME);
-			port.importIntoHDFS(scope, DB_URI, DB_USER, DB_PW, importQuery,
-					DB_INPUT_TABLE_NAME + ".id", HDFS_INPUT_NAME);
-
-			if (useStreamingMode) {
-				port.runStreamingMapReduce(scope, STREAMING_MAPPER_SCRIPT,
-						STREAMING_REDUCER_SCRIPT, HDFS_INPUT_NAME,
-						HDFS_OUTPUT_NAME);
-			} else {
-				// Run MR with the pre-compiled JAR
-				final String absolutePathToSourceJar = (new File(
-						PREBUILT_MAPREDUCE_JAR)).getAbsolutePath();
-				port.runMapReduce(scope, absolutePathToSourceJar, new String[] {
-						HDFS_INPUT_NAME, HDFS_OUTPUT_NAME });
-			}
-
-			port.exportToRDBMS(scope, DB_URI, DB_USER, DB_PW,
-					DB_OUTPUT_TABLE_NAME, HDFS_OUTPUT_NAME);
-			port.deleteScope(scope);
+			runWorkflow(port, useStreamingMode);
 		} catch (MapReduceWSIException e) {
 
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Dynamically connect to MapReduce-WSI (to avoid wsimport)
+	 */
+	public static MapReduceWSI connect() throws Exception {
+		URL url = new URL(WSDL_PATH);
+		QName qname = new QName(SERVICE_SCOPE, SERVICE_NAME);
+		Service service = Service.create(url, qname);
+		return service.getPort(MapReduceWSI.class);
+	}
+
+	/**
+	 * Run the test workflow (import, MR, export) in a fresh scope. Expects the
+	 * DB to be populated already.
+	 */
+	public static void runWorkflow(MapReduceWSI port, boolean useStreamingMode)
+			throws MapReduceWSIException {
+		// Create a new MapReduce-WSI scope
+		final long scope = port.createScope();
+
+		// Import data into HDFS, discard the primary key
+		// (This verifies correct filtering)
+		final String importQuery = String.format(
+				"SELECT num0, num1, num2, num3, num4, num5, num6 FROM %s",
+				DB_INPUT_TABLE_NAME);
+		port.importIntoHDFS(scope, DB_URI, DB_USER, DB_PW, importQuery,
+				DB_INPUT_TABLE_NAME + ".id", HDFS_INPUT_NAME);
+
+		if (useStreamingMode) {
+			port.runStreamingMapReduce(scope, STREAMING_MAPPER_SCRIPT,
+					STREAMING_REDUCER_SCRIPT, HDFS_INPUT_NAME, HDFS_OUTPUT_NAME);
+		} else {
+			// Run MR with the pre-compiled JAR
+			final String absolutePathToSourceJar = (new File(
+					PREBUILT_MAPREDUCE_JAR)).getAbsolutePath();
+			port.runMapReduce(scope, absolutePathToSourceJar, new String[] {
+					HDFS_INPUT_NAME, HDFS_OUTPUT_NAME });
+		}
+
+		port.exportToRDBMS(scope, DB_URI, DB_USER, DB_PW, DB_OUTPUT_TABLE_NAME,
+				HDFS_OUTPUT_NAME);
+		port.deleteScope(scope);
+	}
+
 	public void initDBContents() throws Exception {
 		final Connection conn = this.openDBConnection();
 		final Statement stat = conn.createStatement();
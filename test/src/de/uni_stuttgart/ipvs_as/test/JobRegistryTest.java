@@ -0,0 +1,139 @@
+package de.uni_stuttgart.ipvs_as.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+import java.util.Map;
+
+import de.uni_stuttgart.ipvs_as.DatasetCatalog;
+import de.uni_stuttgart.ipvs_as.JobInfo;
+import de.uni_stuttgart.ipvs_as.JobRegistry;
+
+/**
+ * Test for {@link JobRegistry}: verifies that the registry state (including
+ * the {@link DatasetCatalog} persisted in it) survives reopening, that a torn
+ * record at the end of the log (as left by a crash) is ignored and that
+ * unfinished jobs come back as interrupted.
+ *
+ * Unlike {@link EndToEndTest}, this does not need a cluster or a deployed
+ * service.
+ *
+ * @author acgessler
+ */
+public class JobRegistryTest {
+
+	public void run() throws Exception {
+		final File logFile = File.createTempFile("mapreduce_wsi_registry",
+				".log");
+		logFile.delete();
+		try {
+			JobRegistry registry = new JobRegistry(logFile);
+			registry.addScope(1);
+			registry.addScope(2);
+			registry.addScope(3);
+			registry.removeScope(2);
+
+			final long finished = registry.newOperationId();
+			registry.jobStarted(finished, 1, "runStreamingMapReduce");
+			registry.jobFinished(finished, null,
+					new String[] { "/user/mapreduce_wsi/1/mr_output" },
+					new String[] { "job_1433325133337_0042" });
+
+			final long failed = registry.newOperationId();
+			registry.jobStarted(failed, 1, "importIntoHDFS");
+			registry.jobFinished(failed, "sqoop failed", new String[0],
+					new String[0]);
+
+			final long running = registry.newOperationId();
+			registry.jobStarted(running, 3, "runMapReduce");
+
+			// Version 1 of "ref" is attached to scope 1 and stays around
+			// after being replaced by version 2.
+			registry.datasetPublished("ref", 1, "/shared/ref/v1", "10/10");
+			registry.datasetAttached(1, 1);
+			registry.datasetPublished("ref", 2, "/shared/ref/v2", "11/11");
+			registry.datasetAttached(3, 2);
+			registry.close();
+
+			// Simulate a crash in the middle of writing a record
+			final FileOutputStream out = new FileOutputStream(logFile, true);
+			out.write("{\"type\":\"scope\",\"scop".getBytes("UTF-8"));
+			out.close();
+
+			registry = new JobRegistry(logFile);
+			final long[] scopes = registry.listScopes();
+			check(scopes.length == 2 && scopes[0] == 1 && scopes[1] == 3,
+					"scopes after reopen");
+			check(!registry.hasScope(2), "deleted scope is gone");
+
+			final JobInfo[] jobs = registry.listJobs(1);
+			check(jobs.length == 2, "jobs of scope 1");
+			check(jobs[0].getStatus().equals(JobInfo.STATUS_SUCCEEDED),
+					"finished job status");
+			check(jobs[0].getArtifacts().length == 1
+					&& jobs[0].getArtifacts()[0]
+							.equals("/user/mapreduce_wsi/1/mr_output"),
+					"finished job artifacts");
+			check(jobs[0].getJobIds().length == 1
+					&& jobs[0].getJobIds()[0].equals("job_1433325133337_0042"),
+					"finished job IDs");
+			check(jobs[0].getEndTime() >= jobs[0].getStartTime(),
+					"finished job timings");
+			check(jobs[1].getStatus().equals(JobInfo.STATUS_FAILED)
+					&& jobs[1].getError().equals("sqoop failed"),
+					"failed job");
+			check(registry.getJob(running).getStatus().equals(
+					JobInfo.STATUS_INTERRUPTED), "interrupted job");
+			check(registry.newOperationId() > running,
+					"operation IDs are not reused");
+
+			final List<Map<String, Object>> datasets = registry.listDatasets();
+			check(datasets.size() == 2
+					&& "/shared/ref/v1".equals(datasets.get(0).get("hdfsPath")),
+					"dataset versions after reopen");
+			final DatasetCatalog catalog = new DatasetCatalog(registry);
+			check(catalog.get("ref").getVersion() == 2,
+					"current dataset version");
+			check(catalog.findAttached(1, "ref").getVersion() == 1,
+					"attachment of retired version");
+			check(catalog.allocateVersion() > 2,
+					"dataset versions are not reused");
+			final List<DatasetCatalog.Dataset> unreferenced = catalog.detach(
+					1, "ref");
+			check(unreferenced.size() == 1,
+					"retired version returned for deletion once detached");
+			check(registry.listDatasets().size() == 2,
+					"retired version kept until deleted");
+			catalog.deleteFailed(unreferenced.get(0));
+			check(catalog.detach(1, "ref").size() == 1,
+					"retired version returned again after failed deletion");
+			catalog.deleted(unreferenced.get(0));
+			catalog.markValidated(catalog.get("ref"));
+			final long validatedAt = catalog.get("ref").getValidatedAt();
+
+			// Records written after the torn one must survive as well
+			registry.addScope(4);
+			registry.close();
+			registry = new JobRegistry(logFile);
+			check(registry.hasScope(4), "scope added after recovery");
+			check(registry.listDatasets().size() == 1,
+					"dropped dataset version is gone");
+			check(new DatasetCatalog(registry).get("ref").getValidatedAt()
+					== validatedAt, "validation time after reopen");
+			registry.close();
+		} finally {
+			logFile.delete();
+		}
+		System.out.println("JobRegistryTest: all tests passed");
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError("JobRegistryTest failed: " + message);
+		}
+	}
+
+	public static void main(String[] arguments) throws Exception {
+		(new JobRegistryTest()).run();
+	}
+}
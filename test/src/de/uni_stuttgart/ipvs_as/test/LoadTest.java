@@ -0,0 +1,243 @@
+package de.uni_stuttgart.ipvs_as.test;
+
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.uni_stuttgart.ipvs_as.Json;
+import de.uni_stuttgart.ipvs_as.MapReduceWSI;
+
+/**
+ * Concurrent load/soak test for MapReduceWSI. Runs the {@link EndToEndTest}
+ * workflow (create scope, import, MR, export, delete scope) from many
+ * concurrent clients and reports throughput, latency percentiles and error
+ * rates per operation as a JSON summary.
+ *
+ * By default, the test runs against an in-process {@link StubbedService}, so
+ * it measures the service itself and not the cluster. It can be run against a
+ * deployed service (and a real cluster) as well, but then it will not be a
+ * cheap test.
+ *
+ * Parameters are taken from system properties:
+ * <ul>
+ * <li>clients: number of concurrent clients (default 50)
+ * <li>rampUpSeconds: time over which client start-up is spread evenly
+ * (default 10)
+ * <li>durationSeconds: time each client keeps running workflows after it
+ * started (default 60)
+ * <li>streamingRatio: fraction of workflows that use Streaming Mode as
+ * opposed to the pre-built JAR (default 0.5)
+ * <li>output: file to write the summary to (default: stdout only)
+ * <li>stubbed: whether to run against a {@link StubbedService} instead of a
+ * deployed service (default true)
+ * <li>remoteLatencyMillis: time every remote command or upload of the
+ * {@link StubbedService} takes (default 200)
+ * </ul>
+ *
+ * @author acgessler
+ */
+public class LoadTest {
+
+	private final int clients = Integer.getInteger("clients", 50);
+	private final int rampUpSeconds = Integer.getInteger("rampUpSeconds", 10);
+	private final int durationSeconds = Integer.getInteger("durationSeconds",
+			60);
+	private final double streamingRatio = Double.parseDouble(System
+			.getProperty("streamingRatio", "0.5"));
+	private final String output = System.getProperty("output");
+	private final boolean stubbed = Boolean.parseBoolean(System.getProperty(
+			"stubbed", "true"));
+	private final int remoteLatencyMillis = Integer.getInteger(
+			"remoteLatencyMillis", 200);
+
+	// Latencies (in nanoseconds) and error counts per operation name
+	private final Map<String, List<Long>> latencies = new TreeMap<String, List<Long>>();
+	private final Map<String, Long> errors = new TreeMap<String, Long>();
+
+	private final AtomicLong completedWorkflows = new AtomicLong();
+	private final AtomicLong failedWorkflows = new AtomicLong();
+
+	public void run() throws Exception {
+		StubbedService service = null;
+		if (stubbed) {
+			service = new StubbedService(remoteLatencyMillis);
+			service.start();
+		}
+		try {
+			runClients();
+		} finally {
+			if (service != null) {
+				service.stop();
+			}
+		}
+	}
+
+	private void runClients() throws Exception {
+		final List<Thread> threads = new ArrayList<Thread>();
+		final long start = System.nanoTime();
+		for (int i = 0; i < clients; ++i) {
+			final long startDelayMillis = clients > 1 ? rampUpSeconds * 1000L
+					* i / (clients - 1) : 0;
+			final Thread thread = new Thread(new Runnable() {
+				public void run() {
+					runClient(startDelayMillis);
+				}
+			}, "LoadTest-client-" + i);
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		final long elapsedNanos = System.nanoTime() - start;
+
+		final StringWriter summary = new StringWriter();
+		Json.write(summary, buildSummary(elapsedNanos));
+		System.out.println(summary.toString());
+		if (output != null) {
+			final Writer writer = new OutputStreamWriter(new FileOutputStream(
+					output), "UTF-8");
+			try {
+				writer.write(summary.toString());
+			} finally {
+				writer.close();
+			}
+		}
+	}
+
+	private void runClient(long startDelayMillis) {
+		try {
+			Thread.sleep(startDelayMillis);
+
+			// Each client gets its own port, just as independent client
+			// processes would. Ports are not guaranteed to be thread-safe.
+			final MapReduceWSI port = timed(EndToEndTest.connect());
+			final Random random = new Random();
+			final long end = System.currentTimeMillis() + durationSeconds
+					* 1000L;
+			while (System.currentTimeMillis() < end) {
+				try {
+					EndToEndTest.runWorkflow(port,
+							random.nextDouble() < streamingRatio);
+					completedWorkflows.incrementAndGet();
+				} catch (Exception e) {
+					failedWorkflows.incrementAndGet();
+				}
+			}
+		} catch (Exception e) {
+			// Failure to connect at all
+			e.printStackTrace();
+			recordError("connect");
+		}
+	}
+
+	// Wrap |port| so that all calls are timed and recorded
+	private MapReduceWSI timed(final MapReduceWSI port) {
+		return (MapReduceWSI) Proxy.newProxyInstance(
+				MapReduceWSI.class.getClassLoader(),
+				new Class<?>[] { MapReduceWSI.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) throws Throwable {
+						final long start = System.nanoTime();
+						try {
+							final Object result = method.invoke(port, args);
+							recordLatency(method.getName(), System.nanoTime()
+									- start);
+							return result;
+						} catch (InvocationTargetException e) {
+							recordError(method.getName());
+							throw e.getCause();
+						}
+					}
+				});
+	}
+
+	private synchronized void recordLatency(String operation, long nanos) {
+		List<Long> list = latencies.get(operation);
+		if (list == null) {
+			list = new ArrayList<Long>();
+			latencies.put(operation, list);
+		}
+		list.add(nanos);
+	}
+
+	private synchronized void recordError(String operation) {
+		final Long count = errors.get(operation);
+		errors.put(operation, count == null ? 1 : count + 1);
+	}
+
+	private synchronized Map<String, Object> buildSummary(long elapsedNanos) {
+		final double elapsedSeconds = elapsedNanos / 1e9;
+		final Map<String, Object> summary = new LinkedHashMap<String, Object>();
+		summary.put("clients", clients);
+		summary.put("rampUpSeconds", rampUpSeconds);
+		summary.put("durationSeconds", durationSeconds);
+		summary.put("streamingRatio", streamingRatio);
+		summary.put("elapsedSeconds", elapsedSeconds);
+		summary.put("completedWorkflows", completedWorkflows.get());
+		summary.put("failedWorkflows", failedWorkflows.get());
+		summary.put("workflowsPerSecond", completedWorkflows.get()
+				/ elapsedSeconds);
+
+		long totalCalls = 0;
+		long totalErrors = 0;
+		final Map<String, Object> operations = new LinkedHashMap<String, Object>();
+		final Set<String> names = new TreeSet<String>(latencies.keySet());
+		names.addAll(errors.keySet());
+		for (String name : names) {
+			final List<Long> list = latencies.containsKey(name) ? latencies
+					.get(name) : new ArrayList<Long>();
+			Collections.sort(list);
+			final long errorCount = errors.containsKey(name) ? errors
+					.get(name) : 0;
+			final long calls = list.size() + errorCount;
+			totalCalls += calls;
+			totalErrors += errorCount;
+
+			final Map<String, Object> stats = new LinkedHashMap<String, Object>();
+			stats.put("calls", calls);
+			stats.put("errors", errorCount);
+			stats.put("errorRate", calls == 0 ? 0.0 : (double) errorCount
+					/ calls);
+			stats.put("callsPerSecond", list.size() / elapsedSeconds);
+			stats.put("p50Millis", percentileMillis(list, 50));
+			stats.put("p95Millis", percentileMillis(list, 95));
+			stats.put("p99Millis", percentileMillis(list, 99));
+			stats.put("maxMillis", percentileMillis(list, 100));
+			operations.put(name, stats);
+		}
+		summary.put("calls", totalCalls);
+		summary.put("errorRate", totalCalls == 0 ? 0.0 : (double) totalErrors
+				/ totalCalls);
+		summary.put("operations", operations);
+		return summary;
+	}
+
+	// Nearest-rank percentile of the sorted nanosecond values in |sorted|
+	private static double percentileMillis(List<Long> sorted, int percentile) {
+		if (sorted.isEmpty()) {
+			return 0.0;
+		}
+		final int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+		return sorted.get(Math.max(rank, 1) - 1) / 1e6;
+	}
+
+	public static void main(String[] arguments) throws Exception {
+		(new LoadTest()).run();
+	}
+}
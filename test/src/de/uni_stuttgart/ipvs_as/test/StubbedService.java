@@ -0,0 +1,155 @@
+package de.uni_stuttgart.ipvs_as.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.xml.ws.Endpoint;
+
+import de.uni_stuttgart.ipvs_as.ConfigStub;
+import de.uni_stuttgart.ipvs_as.MapReduceWSIException;
+import de.uni_stuttgart.ipvs_as.MapReduceWSIImpl;
+import de.uni_stuttgart.ipvs_as.RemoteExecutor;
+
+/**
+ * Runs MapReduceWSI in-process at the address expected by
+ * {@link EndToEndTest#connect}, with the remote host stubbed out. No commands
+ * are run and nothing is uploaded, every remote command or upload just takes
+ * a fixed time to complete. This measures the service itself and not the
+ * cluster (see {@link LoadTest}).
+ *
+ * The service uses the configuration in WebContent/WEB-INF (relative to the
+ * working directory), except that its registry and uploads go to a
+ * temporary folder and the agent is not used.
+ *
+ * @author acgessler
+ */
+public class StubbedService {
+
+	public static final String ADDRESS = "http://localhost:8080/mapreduce-wsi/mapreduce";
+	public static final String CONFIG_PATH = "WebContent/WEB-INF/"
+			+ ConfigStub.CONFIG_FILE_NAME;
+
+	// Remote host stand-in
+	private static class StubRemoteExecutor implements RemoteExecutor {
+		final long latencyMillis;
+
+		StubRemoteExecutor(long latencyMillis) {
+			this.latencyMillis = latencyMillis;
+		}
+
+		public Result exec(String command) throws MapReduceWSIException {
+			simulateLatency();
+			return new Result(0, "", "");
+		}
+
+		public void upload(String srcName, String destName)
+				throws MapReduceWSIException {
+			simulateLatency();
+		}
+
+		private void simulateLatency() throws MapReduceWSIException {
+			try {
+				Thread.sleep(latencyMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MapReduceWSIException("Interrupted", e);
+			}
+		}
+	}
+
+	// Stand-in for the servlet context the service would run in
+	private static class Context implements InvocationHandler {
+		final Map<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+		final byte[] config;
+		final ServletContext context = (ServletContext) Proxy
+				.newProxyInstance(ServletContext.class.getClassLoader(),
+						new Class<?>[] { ServletContext.class }, this);
+
+		Context(byte[] config) {
+			this.config = config;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] arguments) {
+			final String name = method.getName();
+			if (name.equals("getAttribute")) {
+				return attributes.get(arguments[0]);
+			} else if (name.equals("setAttribute")) {
+				attributes.put((String) arguments[0], arguments[1]);
+			} else if (name.equals("removeAttribute")) {
+				attributes.remove(arguments[0]);
+			} else if (name.equals("getResourceAsStream")) {
+				return new ByteArrayInputStream(config);
+			} else if (name.equals("log")) {
+				System.err.println(arguments[0]);
+				if (arguments.length > 1) {
+					((Throwable) arguments[1]).printStackTrace();
+				}
+			}
+			return null;
+		}
+	}
+
+	private final Context context;
+	private final RemoteExecutor remote;
+	private final ConfigStub configStub = new ConfigStub();
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private Endpoint endpoint;
+
+	/**
+	 * @param remoteLatencyMillis
+	 *            Time every remote command or upload takes
+	 */
+	public StubbedService(long remoteLatencyMillis) throws IOException {
+		final Properties config = new Properties();
+		final InputStream in = new FileInputStream(CONFIG_PATH);
+		try {
+			config.loadFromXML(in);
+		} finally {
+			in.close();
+		}
+		final File dir = File.createTempFile("mapreduce_wsi_stubbed", null);
+		if (!dir.delete() || !dir.mkdir()) {
+			throw new IOException("Failed to create temporary folder " + dir);
+		}
+		config.setProperty("registryFile",
+				new File(dir, "registry.log").getAbsolutePath());
+		config.setProperty("uploadDir",
+				new File(dir, "uploads").getAbsolutePath());
+		config.remove("agentPort");
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		config.storeToXML(out, null);
+		context = new Context(out.toByteArray());
+		remote = new StubRemoteExecutor(remoteLatencyMillis);
+	}
+
+	public void start() {
+		configStub.contextInitialized(new ServletContextEvent(context.context));
+		// Replaces the SSH executor set up by ConfigStub
+		context.attributes.put("remote", remote);
+		endpoint = Endpoint.create(new MapReduceWSIImpl(context.context));
+		// By default, requests are served one at a time
+		endpoint.setExecutor(executor);
+		endpoint.publish(ADDRESS);
+	}
+
+	public void stop() {
+		endpoint.stop();
+		executor.shutdown();
+		configStub.contextDestroyed(new ServletContextEvent(context.context));
+	}
+}